@@ -0,0 +1,65 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.wire.bots.sdk.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asset AES encryption and decryption by asset size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetCryptoBenchmark {
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    private final byte[] key = new byte[32];
+    private final byte[] iv = new byte[16];
+    private byte[] data;
+    private byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        data = new byte[size];
+        random.nextBytes(data);
+        encrypted = Util.encrypt(key, data, iv);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return Util.encrypt(key, data, iv);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return Util.decrypt(key, encrypted);
+    }
+}
@@ -0,0 +1,79 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.wire.bots.sdk.ClientRepo;
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.WireClientFactory;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClientRepo lookups. The clients are stubs so a miss measures the repo and the storage, not CryptoBox
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientRepoBenchmark {
+    private static final String BOT = "bot";
+
+    private ClientRepo repo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String dir = Stubs.mkTmpDir("bench-repo").getAbsolutePath();
+        LogBotStorage storage = new LogBotStorage(dir);
+
+        BotState state = new BotState();
+        state.id = BOT;
+        state.client = "device";
+        state.token = "token";
+        state.conversation = "conv";
+        storage.save(state);
+
+        WireClientFactory factory = (botId, convId, clientId, token) -> Stubs.client(botId, convId, clientId);
+        repo = new ClientRepo(factory, dir, Runnable::run, new Configuration.Clients(), storage);
+        repo.getWireClient(BOT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repo.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WireClient hit() {
+        return repo.getWireClient(BOT);
+    }
+
+    @Benchmark
+    public WireClient miss() {
+        repo.removeClient(BOT);
+        return repo.getWireClient(BOT);
+    }
+}
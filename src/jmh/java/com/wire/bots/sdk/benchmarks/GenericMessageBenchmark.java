@@ -0,0 +1,128 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.waz.model.Messages;
+import com.wire.bots.sdk.MessageHandlerBase;
+import com.wire.bots.sdk.server.GenericMessageProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the decrypted GenericMessage and its dispatch to the handler, per message type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenericMessageBenchmark {
+    @Param({"text", "edit", "ot", "image", "audio", "video", "file"})
+    public String type;
+
+    private byte[] bytes;
+    private Messages.GenericMessage message;
+    private GenericMessageProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        message = build(type);
+        bytes = message.toByteArray();
+        processor = new GenericMessageProcessor(Stubs.client("bot", "conv", "device"), new MessageHandlerBase() {
+        });
+    }
+
+    @Benchmark
+    public Messages.GenericMessage parseFrom() throws Exception {
+        return Messages.GenericMessage.parseFrom(bytes);
+    }
+
+    @Benchmark
+    public boolean process() {
+        return processor.process("user", message);
+    }
+
+    private static Messages.GenericMessage build(String type) {
+        Messages.GenericMessage.Builder builder = Messages.GenericMessage.newBuilder()
+                .setMessageId(UUID.randomUUID().toString());
+
+        switch (type) {
+            case "text":
+                return builder.setText(text()).build();
+            case "edit":
+                return builder.setEdited(Messages.MessageEdit.newBuilder()
+                        .setReplacingMessageId(UUID.randomUUID().toString())
+                        .setText(text()))
+                        .build();
+            case "ot":
+                return builder.setOt(Messages.OT.newBuilder()
+                        .setType(Messages.OT.Type.INSERT)
+                        .setOffset(42)
+                        .setText("Hello"))
+                        .build();
+            case "image":
+                return builder.setAsset(asset("image/jpeg", Messages.Asset.Original.newBuilder()
+                        .setImage(Messages.Asset.ImageMetaData.newBuilder()
+                                .setWidth(1024)
+                                .setHeight(768))))
+                        .build();
+            case "audio":
+                return builder.setAsset(asset("audio/mp4", Messages.Asset.Original.newBuilder()
+                        .setAudio(Messages.Asset.AudioMetaData.newBuilder()
+                                .setDurationInMillis(27000))))
+                        .build();
+            case "video":
+                return builder.setAsset(asset("video/mp4", Messages.Asset.Original.newBuilder()
+                        .setVideo(Messages.Asset.VideoMetaData.newBuilder()
+                                .setDurationInMillis(27000)
+                                .setWidth(640)
+                                .setHeight(480))))
+                        .build();
+            case "file":
+                return builder.setAsset(asset("application/pdf", Messages.Asset.Original.newBuilder()
+                        .setName("report.pdf")))
+                        .build();
+        }
+        throw new IllegalArgumentException(type);
+    }
+
+    private static Messages.Text text() {
+        return Messages.Text.newBuilder()
+                .setContent("The quick brown fox jumps over the lazy dog")
+                .build();
+    }
+
+    private static Messages.Asset asset(String mimeType, Messages.Asset.Original.Builder original) {
+        return Messages.Asset.newBuilder()
+                .setOriginal(original
+                        .setMimeType(mimeType)
+                        .setSize(1024 * 1024))
+                .setUploaded(Messages.Asset.RemoteData.newBuilder()
+                        .setAssetId(UUID.randomUUID().toString())
+                        .setAssetToken("token")
+                        .setOtrKey(ByteString.copyFrom(new byte[32]))
+                        .setSha256(ByteString.copyFrom(new byte[32])))
+                .build();
+    }
+}
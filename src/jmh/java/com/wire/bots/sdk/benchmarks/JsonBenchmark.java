@@ -0,0 +1,72 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wire.bots.sdk.models.otr.OtrMessage;
+import com.wire.bots.sdk.models.otr.Recipients;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON of the outgoing OtrMessage and of the Recipients, per number of devices
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({"1", "16", "128", "1024"})
+    public int devices;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private OtrMessage message;
+    private byte[] recipientsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        Recipients recipients = new Recipients();
+        for (int i = 0; i < devices; i++) {
+            byte[] cipher = new byte[256];
+            random.nextBytes(cipher);
+            recipients.add("user" + i / 4, "device" + i, Base64.getEncoder().encodeToString(cipher));
+        }
+
+        message = new OtrMessage("sender");
+        message.add(recipients);
+        recipientsJson = mapper.writeValueAsBytes(recipients);
+    }
+
+    @Benchmark
+    public byte[] writeOtrMessage() throws Exception {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Recipients readRecipients() throws Exception {
+        return mapper.readValue(recipientsJson, Recipients.class);
+    }
+}
@@ -0,0 +1,102 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.wire.bots.sdk.OtrManager;
+import com.wire.bots.sdk.models.otr.Missing;
+import com.wire.bots.sdk.models.otr.PreKey;
+import com.wire.bots.sdk.models.otr.PreKeys;
+import com.wire.bots.sdk.models.otr.Recipients;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OtrManager encryption for a growing number of recipient devices, and a one device encrypt/decrypt round trip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OtrBenchmark {
+    private static final String ALICE = "alice";
+    private static final String ALICE_CLIENT = "alice_device";
+
+    @Param({"1", "16", "128"})
+    public int devices;
+
+    private final byte[] content = new byte[256];
+    private OtrManager alice;
+    private OtrManager[] bobs;
+    private Missing recipients;
+    private Missing first;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        alice = new OtrManager(Stubs.mkTmpDir("bench-alice").getAbsolutePath());
+        bobs = new OtrManager[devices];
+        recipients = new Missing();
+        first = new Missing();
+
+        PreKeys preKeys = new PreKeys();
+        for (int i = 0; i < devices; i++) {
+            bobs[i] = new OtrManager(Stubs.mkTmpDir("bench-bob" + i).getAbsolutePath());
+
+            HashMap<String, PreKey> devs = new HashMap<>();
+            devs.put(bobClientId(i), bobs[i].newPreKeys(0, 1).get(0));
+            preKeys.put(bobId(i), devs);
+            recipients.add(bobId(i), bobClientId(i));
+        }
+        first.add(bobId(0), bobClientId(0));
+
+        // establish the sessions and let bob 0 answer so the round trip runs on a confirmed session
+        Recipients init = alice.encrypt(preKeys, content);
+        bobs[0].decrypt(ALICE, ALICE_CLIENT, init.get(bobId(0), bobClientId(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        alice.close();
+        for (OtrManager bob : bobs)
+            bob.close();
+    }
+
+    @Benchmark
+    public Recipients encrypt() throws Exception {
+        return alice.encrypt(recipients, content);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws Exception {
+        Recipients encrypt = alice.encrypt(first, content);
+        return bobs[0].decrypt(ALICE, ALICE_CLIENT, encrypt.get(bobId(0), bobClientId(0)));
+    }
+
+    private static String bobId(int i) {
+        return "bob" + i;
+    }
+
+    private static String bobClientId(int i) {
+        return "bob_device" + i;
+    }
+}
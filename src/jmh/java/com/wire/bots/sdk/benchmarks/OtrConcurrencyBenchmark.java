@@ -0,0 +1,127 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.wire.bots.sdk.OtrManager;
+import com.wire.bots.sdk.models.otr.Missing;
+import com.wire.bots.sdk.models.otr.PreKey;
+import com.wire.bots.sdk.models.otr.PreKeys;
+import com.wire.bots.sdk.models.otr.Recipients;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One sender encrypts for single devices from a growing number of threads, so the scaling of the striped session
+ * locks can be compared on one box. Each thread starts at a different device and walks through all of them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OtrConcurrencyBenchmark {
+    private static final int DEVICES = 32;
+
+    private final byte[] content = new byte[256];
+    private final AtomicInteger threads = new AtomicInteger();
+    private OtrManager alice;
+    private OtrManager[] bobs;
+    private Missing[] recipients;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(OtrConcurrencyBenchmark benchmark) {
+            next = benchmark.threads.getAndIncrement() * 7 % DEVICES;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        alice = new OtrManager(Stubs.mkTmpDir("bench-alice").getAbsolutePath());
+        bobs = new OtrManager[DEVICES];
+        recipients = new Missing[DEVICES];
+
+        PreKeys preKeys = new PreKeys();
+        for (int i = 0; i < DEVICES; i++) {
+            bobs[i] = new OtrManager(Stubs.mkTmpDir("bench-bob" + i).getAbsolutePath());
+
+            HashMap<String, PreKey> devs = new HashMap<>();
+            devs.put(bobClientId(i), bobs[i].newPreKeys(0, 1).get(0));
+            preKeys.put(bobId(i), devs);
+
+            recipients[i] = new Missing();
+            recipients[i].add(bobId(i), bobClientId(i));
+        }
+
+        // establish the sessions with all the devices
+        alice.encrypt(preKeys, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        alice.close();
+        for (OtrManager bob : bobs)
+            bob.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Recipients threads1(Cursor cursor) throws Exception {
+        return encrypt(cursor);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Recipients threads2(Cursor cursor) throws Exception {
+        return encrypt(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Recipients threads4(Cursor cursor) throws Exception {
+        return encrypt(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Recipients threads8(Cursor cursor) throws Exception {
+        return encrypt(cursor);
+    }
+
+    private Recipients encrypt(Cursor cursor) throws Exception {
+        int device = cursor.next;
+        cursor.next = (device + 1) % DEVICES;
+        return alice.encrypt(recipients[device], content);
+    }
+
+    private static String bobId(int i) {
+        return "bob" + i;
+    }
+
+    private static String bobClientId(int i) {
+        return "bob_device" + i;
+    }
+}
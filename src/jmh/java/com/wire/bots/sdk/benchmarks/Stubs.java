@@ -0,0 +1,68 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.benchmarks;
+
+import com.wire.bots.sdk.WireClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+/**
+ * Helpers shared by the benchmarks
+ */
+class Stubs {
+    /**
+     * Client that does no I/O. Returns the given ids and defaults for everything else
+     */
+    static WireClient client(String botId, String convId, String clientId) {
+        return (WireClient) Proxy.newProxyInstance(WireClient.class.getClassLoader(),
+                new Class[]{WireClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return botId;
+                        case "getConversationId":
+                            return convId;
+                        case "getDeviceId":
+                            return clientId;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "Stub:" + botId;
+                    }
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class)
+                        return false;
+                    if (type.isPrimitive() && type != void.class)
+                        return 0;
+                    return null;
+                });
+    }
+
+    static File mkTmpDir(String name) throws IOException {
+        File tmpDir = File.createTempFile(name, "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+        return tmpDir;
+    }
+}
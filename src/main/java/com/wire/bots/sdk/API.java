@@ -18,39 +18,32 @@
 
 package com.wire.bots.sdk;
 
-import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 import com.wire.bots.sdk.assets.IAsset;
 import com.wire.bots.sdk.models.AssetKey;
 import com.wire.bots.sdk.models.otr.*;
 import com.wire.bots.sdk.server.model.Conversation;
 import com.wire.bots.sdk.server.model.NewBotResponseModel;
 import com.wire.bots.sdk.server.model.User;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 
-import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 class API {
 
-    private final static Client client;
     private final static String httpUrl;
     private final String token;
 
     static {
         String env = System.getProperty("env", "prod");
         httpUrl = String.format("https://%s-nginz-https.%s", env, Util.getDomain());
-
-        ClientConfig cfg = new ClientConfig(JacksonJsonProvider.class);
-        client = JerseyClientBuilder.createClient(cfg);
     }
 
     API(String token) {
@@ -66,13 +59,34 @@ class API {
      * @throws IOException CryptoBox exception
      */
     Devices sendMessage(OtrMessage msg, boolean ignoreMissing) throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = BackendMetrics.invoke(endpoint(ignoreMissing), () -> messages(ignoreMissing).
+                post(Entity.entity(msg, MediaType.APPLICATION_JSON)));
+
+        return readDevices(response);
+    }
+
+    CompletableFuture<Devices> sendMessageAsync(OtrMessage msg, boolean ignoreMissing) {
+        ResponseFuture<Devices> ret = new ResponseFuture<>(endpoint(ignoreMissing), API::readDevices);
+        messages(ignoreMissing).
+                async().
+                post(Entity.entity(msg, MediaType.APPLICATION_JSON), ret);
+        return ret;
+    }
+
+    private Invocation.Builder messages(boolean ignoreMissing) {
+        return Transport.client().target(httpUrl).
                 path("bot/messages").
                 queryParam("ignore_missing", ignoreMissing).
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                post(Entity.entity(msg, MediaType.APPLICATION_JSON));
+                property(BackendMetrics.ENDPOINT, endpoint(ignoreMissing));
+    }
 
+    private static String endpoint(boolean ignoreMissing) {
+        return ignoreMissing ? "messages.ignore-missing" : "messages";
+    }
+
+    private static Devices readDevices(Response response) throws IOException {
         int statusCode = response.getStatus();
         if (statusCode == 412) {
             // This message was not sent due to missing clients. Parse those missing clients so the caller can add them
@@ -94,53 +108,101 @@ class API {
     }
 
     Collection<User> getUsers(Collection<String> ids) throws IOException {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("users", () -> users(ids).
+                get(new GenericType<ArrayList<User>>() {
+                }));
+    }
+
+    CompletableFuture<Collection<User>> getUsersAsync(Collection<String> ids) {
+        ResponseFuture<Collection<User>> ret = new ResponseFuture<>("users", response -> {
+            if (response.getStatus() >= 300)
+                throw new IOException("getUsers: " + response.readEntity(String.class));
+            return response.readEntity(new GenericType<ArrayList<User>>() {
+            });
+        });
+        users(ids).async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder users(Collection<String> ids) {
+        return Transport.client().target(httpUrl).
                 path("bot/users").
                 queryParam("ids", String.join(",", ids)).
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                get(new GenericType<ArrayList<User>>() {
-                });
+                property(BackendMetrics.ENDPOINT, "users");
     }
 
     Conversation getConversation() {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("conversation", () -> conversation().
+                get(Conversation.class));
+    }
+
+    CompletableFuture<Conversation> getConversationAsync() {
+        ResponseFuture<Conversation> ret = new ResponseFuture<>("conversation", response -> {
+            if (response.getStatus() >= 300)
+                throw new IOException("getConversation: " + response.readEntity(String.class));
+            return response.readEntity(Conversation.class);
+        });
+        conversation().async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder conversation() {
+        return Transport.client().target(httpUrl).
                 path("bot/conversation").
                 request().
                 header("Authorization", "Bearer " + token).
-                accept(MediaType.APPLICATION_JSON).
-                get(Conversation.class);
+                property(BackendMetrics.ENDPOINT, "conversation").
+                accept(MediaType.APPLICATION_JSON);
     }
 
     PreKeys getPreKeys(Missing missing) {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("prekeys.claim", () -> prekeys().
+                post(Entity.entity(missing, MediaType.APPLICATION_JSON), PreKeys.class));
+    }
+
+    CompletableFuture<PreKeys> getPreKeysAsync(Missing missing) {
+        ResponseFuture<PreKeys> ret = new ResponseFuture<>("prekeys.claim", response -> {
+            if (response.getStatus() >= 300)
+                throw new IOException("getPreKeys: " + response.readEntity(String.class));
+            return response.readEntity(PreKeys.class);
+        });
+        prekeys().async().post(Entity.entity(missing, MediaType.APPLICATION_JSON), ret);
+        return ret;
+    }
+
+    private Invocation.Builder prekeys() {
+        return Transport.client().target(httpUrl).
                 path("bot/users/prekeys").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                accept(MediaType.APPLICATION_JSON).
-                post(Entity.entity(missing, MediaType.APPLICATION_JSON), PreKeys.class);
+                property(BackendMetrics.ENDPOINT, "prekeys.claim").
+                accept(MediaType.APPLICATION_JSON);
     }
 
     ArrayList<Integer> getAvailablePrekeys() {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("prekeys.available", () -> Transport.client().target(httpUrl).
                 path("/bot/client/prekeys").
                 request().
                 header("Authorization", "Bearer " + token).
+                property(BackendMetrics.ENDPOINT, "prekeys.available").
                 accept(MediaType.APPLICATION_JSON).
                 get(new GenericType<ArrayList<Integer>>() {
-                });
+                }));
     }
 
     void uploadPreKeys(ArrayList<PreKey> preKeys) throws IOException {
         NewBotResponseModel model = new NewBotResponseModel();
         model.preKeys = preKeys;
 
-        Response res = client.target(httpUrl).
+        Response res = BackendMetrics.invoke("prekeys.upload", () -> Transport.client().target(httpUrl).
                 path("bot/client/prekeys").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
+                property(BackendMetrics.ENDPOINT, "prekeys.upload").
                 accept(MediaType.APPLICATION_JSON).
-                post(Entity.entity(model, MediaType.APPLICATION_JSON));
+                post(Entity.entity(model, MediaType.APPLICATION_JSON)));
 
         int statusCode = res.getStatus();
         if (statusCode >= 300) {
@@ -149,48 +211,35 @@ class API {
                     statusCode);
             throw new IOException(log);
         }
+        res.close();
     }
 
     AssetKey uploadAsset(IAsset asset) throws Exception {
-        StringBuilder sb = new StringBuilder();
-
-        // Part 1
-        String strMetadata = String.format("{\"public\": %s, \"retention\": \"%s\"}",
-                asset.isPublic(),
-                asset.getRetention());
-
-        sb.append("--frontier\r\n");
-        sb.append("Content-Type: application/json; charset=utf-8\r\n");
-        sb.append("Content-Length: ")
-                .append(strMetadata.length())
-                .append("\r\n\r\n");
-        sb.append(strMetadata)
-                .append("\r\n");
-
-        // Part 2
-        sb.append("--frontier\r\n");
-        sb.append("Content-Type: ")
-                .append(asset.getMimeType())
-                .append("\r\n");
-        sb.append("Content-Length: ")
-                .append(asset.getEncryptedData().length)
-                .append("\r\n");
-        sb.append("Content-MD5: ")
-                .append(Util.calcMd5(asset.getEncryptedData()))
-                .append("\r\n\r\n");
-
-        // Complete
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        os.write(sb.toString().getBytes("utf-8"));
-        os.write(asset.getEncryptedData());
-        os.write("\r\n--frontier--\r\n".getBytes("utf-8"));
-
-        Response response = client.target(httpUrl)
+        MultipartUpload upload = new MultipartUpload(asset);
+        Response response = BackendMetrics.invoke("assets.upload", () -> upload.post(assets()));
+
+        return readAssetKey(response);
+    }
+
+    CompletableFuture<AssetKey> uploadAssetAsync(IAsset asset) {
+        ResponseFuture<AssetKey> ret = new ResponseFuture<>("assets.upload", API::readAssetKey);
+        try {
+            new MultipartUpload(asset).post(assets(), ret);
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    private Invocation.Builder assets() {
+        return Transport.uploads().target(httpUrl)
                 .path("bot/assets")
                 .request(MediaType.APPLICATION_JSON_TYPE)
                 .header("Authorization", "Bearer " + token)
-                .post(Entity.entity(os.toByteArray(), "multipart/mixed; boundary=frontier"));
+                .property(BackendMetrics.ENDPOINT, "assets.upload");
+    }
 
+    private static AssetKey readAssetKey(Response response) throws IOException {
         if (response.getStatus() >= 300) {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
@@ -200,17 +249,50 @@ class API {
     }
 
     byte[] downloadAsset(String assetKey, String assetToken) throws IOException {
-        Invocation.Builder req = client.target(httpUrl)
+        Response response = BackendMetrics.invoke("assets.download", () -> asset(assetKey, assetToken).get());
+
+        return readAsset(response);
+    }
+
+    /**
+     * @return Encrypted asset streamed from the response. Must be closed
+     */
+    InputStream downloadAssetStream(String assetKey, String assetToken) throws IOException {
+        Response response = BackendMetrics.invoke("assets.download", () -> asset(assetKey, assetToken).get());
+
+        return readAssetStream(response);
+    }
+
+    CompletableFuture<byte[]> downloadAssetAsync(String assetKey, String assetToken) {
+        ResponseFuture<byte[]> ret = new ResponseFuture<>("assets.download", API::readAsset);
+        asset(assetKey, assetToken).async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder asset(String assetKey, String assetToken) {
+        Invocation.Builder req = Transport.client().target(httpUrl)
                 .path("bot/assets")
                 .path(assetKey)
                 .request()
-                .header("Authorization", "Bearer " + token);
+                .header("Authorization", "Bearer " + token)
+                .property(BackendMetrics.ENDPOINT, "assets.download");
 
         if (assetToken != null)
             req.header("Asset-Token", assetToken);
 
-        Response response = req.get();
+        return req;
+    }
+
+    private static InputStream readAssetStream(Response response) throws IOException {
+        if (response.getStatus() >= 300) {
+            Logger.warning(response.readEntity(String.class));
+            throw new IOException(response.getStatusInfo().getReasonPhrase());
+        }
+
+        return response.readEntity(InputStream.class);
+    }
 
+    private static byte[] readAsset(Response response) throws IOException {
         if (response.getStatus() >= 300) {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
@@ -0,0 +1,349 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps downloaded assets (decrypted and verified) so that downloading the same asset again does not hit the Backend.
+ * The first tier is an LRU in the heap, the second one a directory on the local disk. Both are bounded by the number of
+ * bytes they hold. Entries are keyed by the asset key and the sha256 of the asset, so a cached asset is only returned
+ * for the same remote data it has been verified against.
+ * <p>
+ * Assets are stored in the clear on disk, the directory should be readable by this process only.
+ */
+public class AssetCache {
+    private final Cache<String, byte[]> heap;
+    private final Disk disk;
+    private final boolean enabled;
+    private final Meter heapHits = new Meter();
+    private final Meter diskHits = new Meter();
+    private final Meter misses = new Meter();
+
+    /**
+     * @param heapBytes Max number of bytes kept in the heap. 0 disables the heap tier
+     * @param dir       Directory for the disk tier. null disables the disk tier
+     * @param diskBytes Max number of bytes kept on disk. 0 disables the disk tier
+     * @throws IOException if the directory cannot be created or read
+     */
+    public AssetCache(long heapBytes, String dir, long diskBytes) throws IOException {
+        this.heap = CacheBuilder.newBuilder()
+                .maximumWeight(heapBytes)
+                .weigher((String key, byte[] data) -> data.length)
+                .build();
+        this.disk = dir != null && diskBytes > 0 ? new Disk(Paths.get(dir), diskBytes) : null;
+        this.enabled = heapBytes > 0 || disk != null;
+    }
+
+    private AssetCache() {
+        this.heap = CacheBuilder.newBuilder().maximumSize(0).build();
+        this.disk = null;
+        this.enabled = false;
+    }
+
+    public static AssetCache disabled() {
+        return new AssetCache();
+    }
+
+    /**
+     * Returns the asset from the cache or downloads it with the loader. Concurrent calls for the same asset download
+     * it only once
+     *
+     * @param assetKey Asset key
+     * @param sha256   Sha256 of the encrypted asset
+     * @param loader   Downloads, verifies and decrypts the asset
+     * @return Decrypted asset. The caller owns the array
+     */
+    public byte[] get(String assetKey, byte[] sha256, Loader loader) throws Exception {
+        if (!enabled)
+            return loader.load();
+
+        String key = key(assetKey, sha256);
+        byte[] data = heap.getIfPresent(key);
+        if (data != null) {
+            heapHits.mark();
+            return data.clone();
+        }
+
+        try {
+            data = heap.get(key, () -> {
+                byte[] cached = disk != null ? disk.get(key) : null;
+                if (cached != null) {
+                    diskHits.mark();
+                    return cached;
+                }
+
+                misses.mark();
+                byte[] loaded = loader.load();
+                if (disk != null)
+                    disk.put(key, loaded);
+                return loaded;
+            });
+            return data.clone();
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the asset if it is cached. Does not download it. Used by the async clients, they download the missing
+     * assets on their own and {@link #put} them. Concurrent async downloads of the same asset are not merged
+     *
+     * @param assetKey Asset key
+     * @param sha256   Sha256 of the encrypted asset
+     * @return Decrypted asset or null if it is not cached. The caller owns the array
+     */
+    public byte[] getIfPresent(String assetKey, byte[] sha256) throws IOException {
+        if (!enabled)
+            return null;
+
+        String key = key(assetKey, sha256);
+        byte[] data = heap.getIfPresent(key);
+        if (data != null) {
+            heapHits.mark();
+            return data.clone();
+        }
+
+        data = disk != null ? disk.get(key) : null;
+        if (data == null) {
+            misses.mark();
+            return null;
+        }
+        diskHits.mark();
+        heap.put(key, data);
+        return data.clone();
+    }
+
+    /**
+     * Adds an asset that has been downloaded and verified
+     *
+     * @param assetKey Asset key
+     * @param sha256   Sha256 of the encrypted asset
+     * @param data     Decrypted asset. It is copied
+     */
+    public void put(String assetKey, byte[] sha256, byte[] data) throws IOException {
+        if (!enabled)
+            return;
+
+        String key = key(assetKey, sha256);
+        byte[] copy = data.clone();
+        heap.put(key, copy);
+        if (disk != null)
+            disk.put(key, copy);
+    }
+
+    /**
+     * Opens the asset if it is cached. Does not download it
+     *
+     * @param assetKey Asset key
+     * @param sha256   Sha256 of the encrypted asset
+     * @return Decrypted asset or null if it is not cached
+     */
+    public InputStream open(String assetKey, byte[] sha256) throws IOException {
+        if (!enabled)
+            return null;
+
+        String key = key(assetKey, sha256);
+        byte[] data = heap.getIfPresent(key);
+        if (data != null) {
+            heapHits.mark();
+            return new ByteArrayInputStream(data);
+        }
+
+        InputStream input = disk != null ? disk.open(key) : null;
+        if (input != null)
+            diskHits.mark();
+        return input;
+    }
+
+    /**
+     * Registers the number of cached bytes per tier and the hits and misses
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("assets.heap.bytes", (Gauge<Long>) () -> {
+            long bytes = 0;
+            for (byte[] data : heap.asMap().values())
+                bytes += data.length;
+            return bytes;
+        });
+        metrics.register("assets.disk.bytes", (Gauge<Long>) () -> disk != null ? disk.getBytes() : 0L);
+        metrics.register("assets.hits.heap", heapHits);
+        metrics.register("assets.hits.disk", diskHits);
+        metrics.register("assets.misses", misses);
+    }
+
+    private static String key(String assetKey, byte[] sha256) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(assetKey.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(sha256);
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    public interface Loader {
+        byte[] load() throws Exception;
+    }
+
+    /**
+     * One file per asset. The index is kept in access order and rebuilt from the file times on start so the least
+     * recently used assets are deleted first
+     */
+    private static class Disk {
+        private final Path dir;
+        private final long maxBytes;
+        private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+        private final AtomicLong bytes = new AtomicLong();
+
+        Disk(Path dir, long maxBytes) throws IOException {
+            this.dir = Files.createDirectories(dir);
+            this.maxBytes = maxBytes;
+
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> list = Files.list(dir)) {
+                list.filter(Files::isRegularFile).forEach(files::add);
+            }
+            Map<Path, FileTime> times = new HashMap<>();
+            for (Path file : files)
+                times.put(file, Files.getLastModifiedTime(file));
+            files.sort(Comparator.comparing(times::get));
+
+            synchronized (this) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    index.put(name, size);
+                    bytes.addAndGet(size);
+                }
+                trim();
+            }
+        }
+
+        byte[] get(String key) throws IOException {
+            if (!touch(key))
+                return null;
+            try {
+                return Files.readAllBytes(dir.resolve(key));
+            } catch (NoSuchFileException e) {
+                remove(key);
+                return null;
+            }
+        }
+
+        InputStream open(String key) throws IOException {
+            if (!touch(key))
+                return null;
+            try {
+                return Files.newInputStream(dir.resolve(key));
+            } catch (NoSuchFileException e) {
+                remove(key);
+                return null;
+            }
+        }
+
+        void put(String key, byte[] data) throws IOException {
+            if (data.length > maxBytes)
+                return;
+
+            Path tmp = dir.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, dir.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            synchronized (this) {
+                Long old = index.put(key, (long) data.length);
+                bytes.addAndGet(data.length - (old != null ? old : 0));
+                trim();
+            }
+        }
+
+        long getBytes() {
+            return bytes.get();
+        }
+
+        private boolean touch(String key) {
+            synchronized (this) {
+                if (index.get(key) == null)
+                    return false;
+            }
+            try {
+                Files.setLastModifiedTime(dir.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ignore) {
+                // only affects the order after a restart
+            }
+            return true;
+        }
+
+        private synchronized void remove(String key) {
+            Long size = index.remove(key);
+            if (size != null)
+                bytes.addAndGet(-size);
+        }
+
+        private synchronized void trim() {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (bytes.get() > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                bytes.addAndGet(-eldest.getValue());
+                try {
+                    Files.deleteIfExists(dir.resolve(eldest.getKey()));
+                } catch (IOException e) {
+                    Logger.warning("AssetCache: failed to delete %s: %s", eldest.getKey(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+package com.wire.bots.sdk;
+
+import com.wire.bots.sdk.assets.IAsset;
+import com.wire.bots.sdk.assets.IGeneric;
+import com.wire.bots.sdk.models.AssetKey;
+import com.wire.bots.sdk.server.model.Conversation;
+import com.wire.bots.sdk.server.model.User;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link WireClient}. Methods return immediately. Encryption runs on the configured
+ * executor and requests to the Backend are made using async invocations so no thread is held while waiting on
+ * the Backend. Failures complete the returned future exceptionally.
+ */
+public interface AsyncWireClient {
+    /**
+     * Post text in the conversation
+     *
+     * @param txt Plain text to be posted into this conversation
+     */
+    CompletableFuture<Void> sendText(String txt);
+
+    /**
+     * Post text into the conversation
+     *
+     * @param txt     Plain text to be posted into this conversation
+     * @param expires Time in milliseconds for this message to expire
+     */
+    CompletableFuture<Void> sendText(String txt, long expires);
+
+    /**
+     * Post url with preview into the conversation
+     *
+     * @param url   Original url
+     * @param title Page title (see og:title)
+     * @param image Page preview image (og:image). Image must be previously uploaded
+     */
+    CompletableFuture<Void> sendLinkPreview(String url, String title, IGeneric image);
+
+    /**
+     * Post picture
+     *
+     * @param bytes    Row image to be sent
+     * @param mimeType Mime type of the image.
+     */
+    CompletableFuture<Void> sendPicture(byte[] bytes, String mimeType);
+
+    /**
+     * Post previously uploaded picture
+     *
+     * @param image Image that has been previously uploaded (@see uploadAsset)
+     */
+    CompletableFuture<Void> sendPicture(IGeneric image);
+
+    /**
+     * Post audio file
+     *
+     * @param bytes    Raw audio file
+     * @param name     Name of this content - this will be showed as title
+     * @param mimeType Mime Type of this content
+     * @param duration Duration in milliseconds
+     */
+    CompletableFuture<Void> sendAudio(byte[] bytes, String name, String mimeType, long duration);
+
+    /**
+     * Post video file
+     *
+     * @param bytes    Raw video file
+     * @param name     Name of this content - this will be showed as title
+     * @param mimeType Mime Type of this content
+     * @param duration Duration in milliseconds
+     */
+    CompletableFuture<Void> sendVideo(byte[] bytes, String name, String mimeType, long duration, int h, int w);
+
+    /**
+     * Post generic file up to 25MB as an attachment into this conversation.
+     *
+     * @param file File to be sent as attachment
+     * @param mime Mime type of this attachment
+     */
+    CompletableFuture<Void> sendFile(File file, String mime);
+
+    /**
+     * Sends ping into conversation
+     */
+    CompletableFuture<Void> ping();
+
+    /**
+     * Sends delivery receipt for the message
+     *
+     * @param msgId Message ID as received from the Backend
+     */
+    CompletableFuture<Void> sendDelivery(String msgId);
+
+    /**
+     * Post Like for a message
+     *
+     * @param msgId Message ID
+     * @param emoji Emoji - Should be '❤' for Like
+     */
+    CompletableFuture<Void> sendReaction(String msgId, String emoji);
+
+    /**
+     * Deletes previously posted message
+     *
+     * @param msgId Message ID
+     */
+    CompletableFuture<Void> deleteMessage(String msgId);
+
+    /**
+     * Encrypts and posts any generic message into this conversation. Use
+     * {@link com.wire.bots.sdk.assets.PreparedMessage} to send the same message into many conversations without
+     * building it again
+     *
+     * @param generic Generic message
+     */
+    CompletableFuture<Void> send(IGeneric generic);
+
+    /**
+     * Uploads assert to backend. This method is used in conjunction with sendPicture(IGeneric)
+     *
+     * @param asset Asset to be uploaded
+     * @return Assert Key and Asset token in case of private assets
+     */
+    CompletableFuture<AssetKey> uploadAsset(IAsset asset);
+
+    /**
+     * This method downloads asset from the Backend. Assets are kept in the same cache as for the blocking client
+     *
+     * @param assetKey        Unique asset identifier (UUID)
+     * @param assetToken      Asset token (null in case of public assets)
+     * @param sha256Challenge SHA256 hash code for this asset
+     * @param otrKey          Encryption key to be used to decrypt the data
+     * @return Decrypted asset data
+     */
+    CompletableFuture<byte[]> downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey);
+
+    /**
+     * Fetch users' profiles from the Backend
+     *
+     * @param userIds User IDs (UUID) that are being requested
+     * @return Collection of user profiles (name, accent colour,...)
+     */
+    CompletableFuture<Collection<User>> getUsers(Collection<String> userIds);
+
+    /**
+     * Fetch conversation details from the Backend
+     *
+     * @return Conversation details including Conversation ID, Conversation name, List of participants
+     */
+    CompletableFuture<Conversation> getConversation();
+
+    /**
+     * @return Blocking client this async client is backed by
+     */
+    WireClient getWireClient();
+}
@@ -0,0 +1,175 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+package com.wire.bots.sdk;
+
+import com.wire.bots.sdk.assets.*;
+import com.wire.bots.sdk.models.AssetKey;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Composes the {@link AsyncWireClient} operations out of the few calls that differ between bots and regular users:
+ * posting of the generic message, upload and download of assets and fetching of the conversation and users.
+ * CPU bound work (asset encryption, message encryption, decryption) is done on the executor.
+ */
+public abstract class AsyncWireClientBase implements AsyncWireClient {
+    protected final Executor executor;
+    protected final AssetCache assets;
+    protected final UploadCache uploads;
+
+    protected AsyncWireClientBase(Executor executor) {
+        this(executor, AssetCache.disabled());
+    }
+
+    protected AsyncWireClientBase(Executor executor, AssetCache assets) {
+        this(executor, assets, UploadCache.disabled());
+    }
+
+    /**
+     * @param executor Executor for the CPU bound work
+     * @param assets   Downloaded assets, shared with the blocking client
+     * @param uploads  Uploaded assets, shared with the blocking client
+     */
+    protected AsyncWireClientBase(Executor executor, AssetCache assets, UploadCache uploads) {
+        this.executor = executor;
+        this.assets = assets;
+        this.uploads = uploads;
+    }
+
+    /**
+     * Downloads the encrypted asset
+     *
+     * @param assetKey   Unique asset identifier (UUID)
+     * @param assetToken Asset token (null in case of public assets)
+     * @return Cipher
+     */
+    protected abstract CompletableFuture<byte[]> downloadCipher(String assetKey, String assetToken);
+
+    @Override
+    public CompletableFuture<Void> sendText(String txt) {
+        return send(new Text(txt));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendText(String txt, long expires) {
+        return send(new Text(txt, expires));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendLinkPreview(String url, String title, IGeneric image) {
+        return Util.supplyAsync(() -> new LinkPreview(url, title, image.createGenericMsg().getAsset()), executor)
+                .thenCompose(this::send);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendPicture(byte[] bytes, String mimeType) {
+        // reuses the remote asset if the same picture was uploaded recently
+        return Util.supplyAsync(() -> new Picture(bytes, mimeType), executor)
+                .thenCompose(image -> uploads.upload(image, this::uploadAsset, executor)
+                        .thenCompose(v -> send(image)));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendPicture(IGeneric image) {
+        return send(image);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAudio(byte[] bytes, String name, String mimeType, long duration) {
+        return Util.supplyAsync(() -> new AudioPreview(bytes, name, mimeType, duration), executor)
+                .thenCompose(preview -> send(preview)
+                        .thenCompose(v -> Util.supplyAsync(() -> new AudioAsset(bytes, preview), executor)))
+                .thenCompose(asset -> uploadAsset(asset).thenCompose(assetKey -> {
+                    asset.setAssetKey(assetKey.key);
+                    asset.setAssetToken(assetKey.token);
+
+                    // post original + remote asset message
+                    return send(asset);
+                }));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendVideo(byte[] bytes, String name, String mimeType, long duration, int h, int w) {
+        String messageId = UUID.randomUUID().toString();
+        return Util.supplyAsync(() -> new VideoPreview(name, mimeType, duration, h, w, bytes.length, messageId), executor)
+                .thenCompose(preview -> send(preview)
+                        .thenCompose(v -> Util.supplyAsync(() -> new VideoAsset(bytes, mimeType, messageId), executor)))
+                .thenCompose(asset -> uploadAsset(asset).thenCompose(assetKey -> {
+                    asset.setAssetKey(assetKey.key);
+                    asset.setAssetToken(assetKey.token);
+
+                    // post original + remote asset message
+                    return send(asset);
+                }));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendFile(File file, String mime) {
+        return Util.supplyAsync(() -> new FileAssetPreview(file, mime), executor)
+                .thenCompose(preview -> send(preview)
+                        .thenCompose(v -> Util.supplyAsync(() -> new FileAsset(preview), executor)))
+                // upload unless the same file was uploaded recently, then post original + remote asset message
+                .thenCompose(asset -> uploads.upload(asset, this::uploadAsset, executor)
+                        .thenCompose(v -> send(asset)));
+    }
+
+    @Override
+    public CompletableFuture<Void> ping() {
+        return send(new Ping());
+    }
+
+    @Override
+    public CompletableFuture<Void> sendDelivery(String msgId) {
+        return send(new Confirmation(msgId));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendReaction(String msgId, String emoji) {
+        return send(new Reaction(msgId, emoji));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMessage(String msgId) {
+        return send(new Delete(msgId));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge,
+                                                   byte[] otrKey) {
+        return Util.supplyAsync(() -> assets.getIfPresent(assetKey, sha256Challenge), executor).thenCompose(cached -> {
+            if (cached != null)
+                return CompletableFuture.completedFuture(cached);
+
+            return downloadCipher(assetKey, assetToken).thenCompose(cipher -> Util.supplyAsync(() -> {
+                byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(cipher);
+                if (!Arrays.equals(sha256, sha256Challenge))
+                    throw new Exception("Failed sha256 check");
+
+                byte[] data = Util.decrypt(otrKey, cipher);
+                assets.put(assetKey, sha256Challenge, data);
+                return data;
+            }, executor));
+        });
+    }
+}
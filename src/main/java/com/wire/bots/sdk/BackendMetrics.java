@@ -0,0 +1,105 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.codahale.metrics.MetricRegistry;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency and status metrics of the Backend calls. Requests are tagged with the {@link #ENDPOINT} property, the filter
+ * then updates for every response:
+ * <ul>
+ * <li>backend.[endpoint].requests: Timer from sending the request until the response headers arrive</li>
+ * <li>backend.[endpoint].responses.[2xx|3xx|4xx|5xx]: Meter per status class</li>
+ * <li>backend.[endpoint].missing-clients: Meter of 412 responses, each one is followed by a retry</li>
+ * <li>backend.[endpoint].errors: Meter of calls that failed with a {@link ProcessingException}, mostly without a
+ * response (connect and read timeouts, refused or reset connections). The filter never sees those, the calls are
+ * made through {@link #invoke} or {@link ResponseFuture} to count them</li>
+ * </ul>
+ * Requests without the property are not measured.
+ */
+public final class BackendMetrics implements ClientRequestFilter, ClientResponseFilter {
+    public static final String ENDPOINT = "com.wire.bots.sdk.endpoint";
+    private static final String START = "com.wire.bots.sdk.start";
+
+    private static volatile MetricRegistry registry = new MetricRegistry();
+
+    /**
+     * @param metrics Registry the metrics are exported to from now on
+     */
+    public static void register(MetricRegistry metrics) {
+        registry = metrics;
+    }
+
+    /**
+     * Runs a blocking call to the Backend and counts it in the errors if it throws a {@link ProcessingException}
+     *
+     * @param endpoint   Endpoint the request is tagged with
+     * @param invocation The call
+     * @return Whatever the call returns
+     */
+    public static <T> T invoke(String endpoint, Supplier<T> invocation) {
+        try {
+            return invocation.get();
+        } catch (ProcessingException e) {
+            failed(endpoint);
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a failed call in backend.[endpoint].errors
+     *
+     * @param endpoint Endpoint the request is tagged with
+     */
+    public static void failed(String endpoint) {
+        registry.meter("backend." + endpoint + ".errors").mark();
+    }
+
+    @Override
+    public void filter(ClientRequestContext request) {
+        if (request.getProperty(ENDPOINT) != null)
+            request.setProperty(START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) {
+        Object endpoint = request.getProperty(ENDPOINT);
+        Object start = request.getProperty(START);
+        if (endpoint == null || start == null)
+            return;
+
+        MetricRegistry metrics = registry;
+        String name = "backend." + endpoint;
+        int status = response.getStatus();
+
+        metrics.timer(name + ".requests").update(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+        metrics.meter(name + ".responses." + status / 100 + "xx").mark();
+        if (status == 412)
+            metrics.meter(name + ".missing-clients").mark();
+    }
+}
@@ -26,11 +26,12 @@ import com.wire.bots.sdk.server.model.User;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  *
@@ -41,14 +42,23 @@ class BotClient implements WireClient {
     private final String clientId;
     private final API api;
     private final OtrManager otrManager;
-    private Devices devices = null;
+    private final UploadCache uploads;
+    private final AssetCache assets;
+    private volatile Missing devices = null;   // all the devices in this conversation. Replaced on every change
 
     BotClient(OtrManager otrManager, String botId, String convId, String clientId, String token) {
+        this(otrManager, botId, convId, clientId, token, UploadCache.disabled(), AssetCache.disabled());
+    }
+
+    BotClient(OtrManager otrManager, String botId, String convId, String clientId, String token,
+              UploadCache uploads, AssetCache assets) {
         this.botId = botId;
         this.conversationId = convId;
         this.clientId = clientId;
         this.api = new API(token);
         this.otrManager = otrManager;
+        this.uploads = uploads;
+        this.assets = assets;
     }
 
     @Override
@@ -77,9 +87,8 @@ class BotClient implements WireClient {
     public void sendPicture(byte[] bytes, String mimeType) throws Exception {
         Picture image = new Picture(bytes, mimeType);
 
-        AssetKey assetKey = uploadAsset(image);
-        image.setAssetKey(assetKey.key);
-        image.setAssetToken(assetKey.token);
+        // reuses the remote asset if the same picture was uploaded recently
+        uploads.upload(image, this::uploadAsset);
 
         postGenericMessage(image);
     }
@@ -128,15 +137,18 @@ class BotClient implements WireClient {
         // post preview
         postGenericMessage(preview);
 
-        // upload asset to backend
-        AssetKey assetKey = uploadAsset(asset);
-        asset.setAssetKey(assetKey.key);
-        asset.setAssetToken(assetKey.token);
+        // upload asset to backend unless the same file was uploaded recently
+        uploads.upload(asset, this::uploadAsset);
 
         // post original + remote asset message
         postGenericMessage(asset);
     }
 
+    @Override
+    public void send(IGeneric generic) throws Exception {
+        postGenericMessage(generic);
+    }
+
     @Override
     public void ping() throws Exception {
         postGenericMessage(new Ping());
@@ -150,12 +162,23 @@ class BotClient implements WireClient {
     @Override
     public byte[] downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey)
             throws Exception {
-        byte[] cipher = api.downloadAsset(assetKey, assetToken);
-        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(cipher);
-        if (!Arrays.equals(sha256, sha256Challenge))
-            throw new Exception("Failed sha256 check");
+        return assets.get(assetKey, sha256Challenge, () -> {
+            InputStream cipher = api.downloadAssetStream(assetKey, assetToken);
+            try (InputStream in = new DecryptingInputStream(cipher, otrKey, sha256Challenge)) {
+                return Util.toByteArray(in);
+            }
+        });
+    }
+
+    @Override
+    public InputStream downloadAssetStream(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey)
+            throws Exception {
+        InputStream cached = assets.open(assetKey, sha256Challenge);
+        if (cached != null)
+            return cached;
 
-        return Util.decrypt(otrKey, cipher);
+        InputStream cipher = api.downloadAssetStream(assetKey, assetToken);
+        return new DecryptingInputStream(cipher, otrKey, sha256Challenge);
     }
 
     @Override
@@ -248,6 +271,11 @@ class BotClient implements WireClient {
         return api.uploadAsset(asset);
     }
 
+    @Override
+    public AsyncWireClient async(Executor executor) {
+        return new AsyncBotClient(this, api, assets, uploads, executor);
+    }
+
     /**
      * Encrypt whole message for participants in the conversation. Implements the fallback for the 412 error code and missing
      * devices.
@@ -256,13 +284,14 @@ class BotClient implements WireClient {
      * @throws Exception CryptoBox exception
      */
     private void postGenericMessage(IGeneric generic) throws Exception {
-        OtrMessage msg = new OtrMessage(clientId, generic.createGenericMsg().toByteArray());
+        OtrMessage msg = new OtrMessage(clientId, PreparedMessage.payload(generic));
 
         // Try to encrypt the msg for those devices that we have the session already
-        Recipients encrypt = otrManager.encrypt(getDevices().missing, msg.getContent());
+        Recipients encrypt = otrManager.encrypt(getDevices(), msg.getContent());
         msg.add(encrypt);
 
         Devices res = api.sendMessage(msg);
+        updateDevices(res);
         if (!res.hasMissing()) {
             // Fetch preKeys for the missing devices from the Backend
             PreKeys preKeys = api.getPreKeys(res.missing);
@@ -271,10 +300,8 @@ class BotClient implements WireClient {
             encrypt = otrManager.encrypt(preKeys, msg.getContent());
             msg.add(encrypt);
 
-            // reset devices so they could be pulled next time
-            devices = null;
-
             res = api.sendMessage(msg, true);
+            updateDevices(res);
             if (!res.hasMissing()) {
                 Logger.error(String.format("Failed to send otr message to %d devices. Bot: %s",
                         res.size(),
@@ -284,15 +311,113 @@ class BotClient implements WireClient {
     }
 
     /**
-     * This method will send an empty message to BE and collect the list of missing client ids
-     * When empty message is sent the Backend will respond with error 412 and a list of missing clients.
+     * Non-blocking version of {@link #postGenericMessage}. Encryption runs on the executor, Backend calls are async
+     *
+     * @param generic  generic message to be sent
+     * @param executor Executor for the encryption
+     * @return Future completed once the message has been posted
+     */
+    CompletableFuture<Void> postGenericMessageAsync(IGeneric generic, Executor executor) {
+        return getDevicesAsync()
+                .thenCompose(devices -> Util.supplyAsync(() -> {
+                    OtrMessage msg = new OtrMessage(clientId, PreparedMessage.payload(generic));
+
+                    // Try to encrypt the msg for those devices that we have the session already
+                    msg.add(otrManager.encrypt(devices, msg.getContent()));
+                    return msg;
+                }, executor))
+                .thenCompose(msg -> api.sendMessageAsync(msg, false).thenCompose(res -> {
+                    updateDevices(res);
+                    if (res.hasMissing())
+                        return CompletableFuture.<Void>completedFuture(null);
+
+                    // Fetch preKeys for the missing devices from the Backend and encrypt for them
+                    return api.getPreKeysAsync(res.missing)
+                            .thenCompose(preKeys -> Util.supplyAsync(() -> {
+                                msg.add(otrManager.encrypt(preKeys, msg.getContent()));
+                                return msg;
+                            }, executor))
+                            .thenCompose(m -> api.sendMessageAsync(m, true))
+                            .thenAccept(r -> {
+                                updateDevices(r);
+                                if (!r.hasMissing()) {
+                                    Logger.error(String.format("Failed to send otr message to %d devices. Bot: %s",
+                                            r.size(),
+                                            botId));
+                                }
+                            });
+                }));
+    }
+
+    /**
+     * Returns cached list of devices in this conversation. The first time this method will send an empty message
+     * to BE and collect the list of missing client ids. When empty message is sent the Backend will respond with
+     * error 412 and a list of missing clients.
+     * <p>
+     * The returned map is a snapshot: updates never modify it but replace the cache with a copy under the lock.
      *
      * @return List of all participants in this conversation and their clientIds
      */
-    private Devices getDevices() throws IOException {
-        if (devices != null)
-            return devices;
+    private Missing getDevices() throws IOException {
+        Missing ret = devices;
+        if (ret == null)
+            ret = initDevices(api.sendMessage(new OtrMessage(clientId)).missing);
+        return ret;
+    }
+
+    private CompletableFuture<Missing> getDevicesAsync() {
+        Missing ret = devices;
+        if (ret != null)
+            return CompletableFuture.completedFuture(ret);
+
+        return api.sendMessageAsync(new OtrMessage(clientId), false).thenApply(res -> initDevices(res.missing));
+    }
+
+    /**
+     * Fills the cache unless a concurrent probe or update got there first
+     *
+     * @param missing Devices reported by the probe
+     * @return The cached devices
+     */
+    private synchronized Missing initDevices(Missing missing) {
+        if (devices == null)
+            devices = missing;
+        return devices;
+    }
+
+    /**
+     * Applies the client mismatch reported by BE to the cached devices: missing devices are added, redundant and
+     * deleted ones removed. This keeps the cache current without probing again.
+     *
+     * @param res Response for the last sent message
+     */
+    private synchronized void updateDevices(Devices res) {
+        Missing current = devices;
+        if (current == null)
+            return;
 
-        return api.sendMessage(new OtrMessage(clientId));
+        if (res.missing.isEmpty() && res.redundant.isEmpty() && res.deleted.isEmpty())
+            return;
+
+        Missing update = new Missing();
+        update.addAll(current);
+        update.addAll(res.missing);
+        update.removeAll(res.redundant);
+        update.removeAll(res.deleted);
+        devices = update;
+    }
+
+    @Override
+    public synchronized void onMemberLeave(Collection<String> userIds) {
+        Missing current = devices;
+        if (current == null)
+            return;
+
+        Missing update = new Missing();
+        update.addAll(current);
+        for (String userId : userIds) {
+            update.remove(userId);
+        }
+        devices = update;
     }
 }
@@ -1,102 +1,311 @@
 package com.wire.bots.sdk;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.BotStorage;
+import com.wire.bots.sdk.storage.FileBotStorage;
+import com.wire.bots.sdk.storage.IndexedBotStorage;
 import com.wire.cryptobox.CryptoException;
 
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ClientRepo {
+/**
+ * Cache of open clients. The number of open clients is bounded and clients that have not been used for a while are
+ * closed, releasing their CryptoBox. Evicted clients are closed on the executor: closing waits for the operations
+ * that are in progress on that client, and a client for the same bot is not opened again before that completes.
+ * <p>
+ * Clients handed out with {@link #acquire} are pinned: an evicted client is not closed before all its leases are
+ * released, and a bot that is loaded again meanwhile gets the same client back.
+ */
+public class ClientRepo implements Closeable {
     private final WireClientFactory factory;
     private final String path;
-    private final HashMap<String, WireClient> clients = new HashMap<>();
+    private final Executor executor;
+    private final BotStorage storage;
+    private final Cache<String, WireClient> clients;
+    private final ConcurrentHashMap<String, CompletableFuture<WireClient>> loading = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> closing = new ConcurrentHashMap<>();
+    private final IdentityHashMap<WireClient, Pin> pins = new IdentityHashMap<>();    // guarded by pins
+    private final HashMap<String, WireClient> retired = new HashMap<>();              // guarded by pins
+    private final HashMap<String, WireClient> open = new HashMap<>();                 // guarded by pins
+    private final Timer loads = new Timer();
+    private final Meter evictions = new Meter();
 
     public ClientRepo(WireClientFactory factory, String path) {
+        this(factory, path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param factory  Creates the clients
+     * @param path     Crypto dir
+     * @param executor Executor for the async clients
+     */
+    public ClientRepo(WireClientFactory factory, String path, Executor executor) {
+        this(factory, path, executor, new Configuration.Clients(), new FileBotStorage(path));
+    }
+
+    /**
+     * @param factory  Creates the clients
+     * @param path     Crypto dir
+     * @param executor Executor for the async clients and for closing of the evicted clients
+     * @param conf     Cache size and idle time
+     * @param storage  Bot metadata. Closed together with this repo
+     */
+    public ClientRepo(WireClientFactory factory, String path, Executor executor, Configuration.Clients conf,
+                      BotStorage storage) {
         this.factory = factory;
         this.path = path;
+        this.executor = executor;
+        this.storage = storage;
+        this.clients = CacheBuilder.newBuilder()
+                .maximumSize(conf.maxSize)
+                .expireAfterAccess(conf.idleSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
     }
 
-    public WireClient getWireClient(String botId) {
-        synchronized (clients) {
-            WireClient wireClient = clients.get(botId);
-            if (wireClient == null || wireClient.isClosed()) {
-                File clientFile = new File(String.format("%s/%s/client.id", path, botId));
-                File tokenFile = new File(String.format("%s/%s/token.id", path, botId));
-                File convFile = new File(String.format("%s/%s/conversation.id", path, botId));
-
-                if (!clientFile.exists() || !tokenFile.exists())
-                    return null;
-
-                try {
-                    String clientId = Util.readLine(clientFile);
-                    String token = Util.readLine(tokenFile);
-                    String conv = convFile.exists() ? Util.readLine(convFile) : null;
-
-                    wireClient = factory.createClient(botId, conv, clientId, token);
-                    WireClient old = clients.put(botId, wireClient);
-                    if (old != null)
-                        old.close();
-                } catch (Exception e) {
-                    Logger.error("GetWireClient. BotId: %s, status: %s", botId, e.getLocalizedMessage());
+    /**
+     * Registers cache size, hit rate, evictions and load time
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("clients.size", (Gauge<Long>) clients::size);
+        metrics.register("clients.hit-rate", (Gauge<Double>) () -> clients.stats().hitRate());
+        metrics.register("clients.evictions", evictions);
+        metrics.register("clients.loads", loads);
+    }
+
+    /**
+     * Non-blocking client for the given bot. The client is not pinned, see {@link #acquire}
+     *
+     * @param botId Bot ID
+     * @return Async client or NULL if there is no such bot
+     */
+    public AsyncWireClient getAsyncWireClient(String botId) {
+        WireClient wireClient = getWireClient(botId);
+        return wireClient != null ? wireClient.async(executor) : null;
+    }
+
+    /**
+     * Pins the client of the bot. The client is not closed before the lease is closed, even if it gets evicted
+     * meanwhile. Use this for any work on the client that may outlive a short call
+     *
+     * @param botId Bot ID
+     * @return Lease on the client or NULL if there is no such bot. Must be closed
+     */
+    public Lease acquire(String botId) {
+        while (true) {
+            WireClient client = getWireClient(botId);
+            if (client == null)
+                return null;
+
+            synchronized (pins) {
+                // evicted between the lookup and the pin: load again
+                if (clients.getIfPresent(botId) == client || retired.get(botId) == client) {
+                    pins.computeIfAbsent(client, c -> new Pin(botId)).refs++;
+                    return new Lease(client);
                 }
             }
-            return wireClient;
         }
     }
 
+    /**
+     * Client of the bot. The client is not pinned and gets closed once it is evicted, use {@link #acquire} unless
+     * the client is only used right away
+     *
+     * @param botId Bot ID
+     * @return Client or NULL if the bot does not exist
+     */
+    public WireClient getWireClient(String botId) {
+        return getWireClient(botId, botId, () -> {
+            BotState state = storage.get(botId);
+            if (state == null || state.client == null || state.token == null)
+                return null;
+
+            return factory.createClient(botId, state.conversation, state.client, state.token);
+        });
+    }
+
     @Deprecated
     public WireClient getWireClient(String botId, String conv) throws CryptoException, IOException {
-        synchronized (clients) {
-            String key = String.format("%s-%s", botId, conv);
-            WireClient wireClient = clients.get(key);
+        String key = String.format("%s-%s", botId, conv);
+        return getWireClient(key, botId, () -> {
+            BotState state = storage.get(botId);
+            if (state == null || state.client == null || state.token == null)
+                return null;
+
+            return factory.createClient(botId, conv, state.client, state.token);
+        });
+    }
+
+    /**
+     * Returns the open client for the key without locking. On a miss only one thread loads the client for the key,
+     * concurrent callers for the same key wait for it while other keys are not blocked.
+     *
+     * @param key    Cache key
+     * @param botId  Bot ID
+     * @param loader Creates the client. Returns NULL if the bot does not exist
+     * @return Client or NULL if the bot does not exist
+     */
+    private WireClient getWireClient(String key, String botId, Loader loader) {
+        WireClient wireClient = clients.getIfPresent(key);
+        if (wireClient != null && !wireClient.isClosed())
+            return wireClient;
+
+        CompletableFuture<WireClient> load = new CompletableFuture<>();
+        CompletableFuture<WireClient> pending = loading.putIfAbsent(key, load);
+        if (pending != null)
+            return pending.join();
+
+        wireClient = clients.getIfPresent(key);
+        try {
             if (wireClient == null || wireClient.isClosed()) {
-                File clientFile = new File(String.format("%s/%s/client.id", path, botId));
-                File tokenFile = new File(String.format("%s/%s/token.id", path, botId));
-                
-                if (!clientFile.exists() || !tokenFile.exists())
-                    return null;
-
-                try {
-                    String clientId = Util.readLine(clientFile);
-                    String token = Util.readLine(tokenFile);
-
-                    wireClient = factory.createClient(botId, conv, clientId, token);
-                    WireClient old = clients.put(key, wireClient);
-                    if (old != null)
-                        old.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Logger.error("GetWireClient. BotId: %s, conv: %s, status: %s",
-                            botId,
-                            conv,
-                            e.getLocalizedMessage());
+                // never open the same box twice: reuse the evicted one if it is still pinned or wait for it to close
+                wireClient = reclaim(key);
+                if (wireClient == null) {
+                    try (Timer.Context ignored = loads.time()) {
+                        wireClient = loader.load();
+                    }
+                    if (wireClient == null)
+                        return null;
+
+                    synchronized (pins) {
+                        open.put(key, wireClient);
+                    }
                 }
+
+                clients.put(key, wireClient);
             }
-            return wireClient;
+        } catch (Exception e) {
+            Logger.error("GetWireClient. BotId: %s, key: %s, status: %s", botId, key, e.getLocalizedMessage());
+        } finally {
+            loading.remove(key, load);
+            load.complete(wireClient);
         }
+        return wireClient;
     }
 
     public void removeClient(String botId) {
-        synchronized (clients) {
-            WireClient remove = clients.remove(botId);
-            if (remove != null) {
-                try {
-                    remove.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        clients.invalidate(botId);
+    }
+
+    /**
+     * Closes all the clients held by this repo, waits for them to close and then closes the storage
+     */
+    @Override
+    public void close() {
+        clients.invalidateAll();
+        clients.cleanUp();
+
+        ArrayList<String> leased;
+        synchronized (pins) {
+            leased = new ArrayList<>(retired.keySet());
+        }
+        for (String key : leased) {
+            WireClient client = revive(key);
+            if (client != null) {
+                Logger.warning("ClientRepo: closing leased client: %s", key);
+                close(key, client);
+            }
+        }
+        for (CompletableFuture<Void> close : closing.values()) {
+            close.join();
+        }
+        try {
+            storage.close();
+        } catch (IOException e) {
+            Logger.warning("ClientRepo: failed to close storage: %s", e.getMessage());
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, WireClient> notification) {
+        String key = notification.getKey();
+        WireClient client = notification.getValue();
+        if (client == null)
+            return;
+
+        if (notification.wasEvicted())
+            evictions.mark();
+
+        // the entry is gone from the cache already: a concurrent load waits in reclaim() until the client is
+        // either retired or closing
+        synchronized (pins) {
+            Pin pin = pins.get(client);
+            if (pin != null) {
+                // closed when the last lease is released
+                pin.retired = true;
+                retired.put(key, client);
+                pins.notifyAll();
+                return;
             }
+            close(key, client);
         }
     }
 
+    /**
+     * Closes the client on the executor, after the previous client of the key has been closed. The close is visible
+     * in {@link #closing} before this returns
+     */
+    private void close(String key, WireClient client) {
+        CompletableFuture<Void> close = new CompletableFuture<>();
+        CompletableFuture<Void> previous;
+        synchronized (pins) {
+            previous = closing.put(key, close);
+            open.remove(key, client);
+            pins.notifyAll();
+        }
+        CompletableFuture<Void> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+        after.whenCompleteAsync((v, t) -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                Logger.warning("ClientRepo: failed to close client: %s, error: %s", key, e.getMessage());
+            } finally {
+                closing.remove(key, close);
+                close.complete(null);
+            }
+        }, executor);
+    }
+
     public void purgeBot(String botId) {
-        File clientFile = new File(String.format("%s/%s/client.id", path, botId));
-        File tokenFile = new File(String.format("%s/%s/token.id", path, botId));
-        File convFile = new File(String.format("%s/%s/conversation.id", path, botId));
+        try {
+            storage.remove(botId);
+        } catch (IOException e) {
+            Logger.error("ClientRepo: failed to purge bot: %s, error: %s", botId, e.getMessage());
+        }
+    }
+
+    /**
+     * Adjusts the conversation size of the bot in the bot index. Only indexed storages keep the conversation size
+     *
+     * @param botId Bot ID
+     * @param delta Number of members that joined (positive) or left (negative)
+     */
+    public void updateMembers(String botId, int delta) {
+        if (storage instanceof IndexedBotStorage)
+            ((IndexedBotStorage) storage).updateMembers(botId, delta);
+    }
 
-        clientFile.delete();
-        tokenFile.delete();
-        convFile.delete();
+    public BotStorage getStorage() {
+        return storage;
     }
 
     public WireClientFactory getFactory() {
@@ -106,4 +315,103 @@ public class ClientRepo {
     public String getPath() {
         return path;
     }
+
+    private void release(WireClient client) {
+        synchronized (pins) {
+            Pin pin = pins.get(client);
+            if (--pin.refs > 0)
+                return;
+            pins.remove(client);
+            if (!pin.retired)
+                return;
+            retired.remove(pin.key, client);
+            close(pin.key, client);
+        }
+    }
+
+    /**
+     * Takes back the evicted client of the key if it is still pinned, otherwise waits until the previous client of
+     * the key is closed. Guava removes the entry before it delivers the removal notification: until then the client
+     * is still open but neither retired nor closing
+     *
+     * @return Evicted client or NULL if a new one can be loaded
+     */
+    private WireClient reclaim(String key) throws InterruptedException {
+        while (true) {
+            CompletableFuture<Void> close;
+            synchronized (pins) {
+                WireClient client = revive(key);
+                if (client != null)
+                    return client;
+
+                close = closing.get(key);
+                if (close == null) {
+                    WireClient previous = open.get(key);
+                    if (previous == null || previous.isClosed())
+                        return null;
+                }
+            }
+
+            if (close != null) {
+                close.join();
+            } else {
+                // expired entries are only removed on cleanup, the notification may also be on its way
+                clients.cleanUp();
+                synchronized (pins) {
+                    if (open.containsKey(key) && !closing.containsKey(key) && !retired.containsKey(key))
+                        pins.wait(10);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes back the evicted client that is still pinned
+     *
+     * @return Client or NULL if there is none
+     */
+    private WireClient revive(String key) {
+        synchronized (pins) {
+            WireClient client = retired.remove(key);
+            if (client != null)
+                pins.get(client).retired = false;
+            return client;
+        }
+    }
+
+    /**
+     * Pinned client. Closing the lease releases the pin
+     */
+    public class Lease implements Closeable {
+        private final WireClient client;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(WireClient client) {
+            this.client = client;
+        }
+
+        public WireClient getClient() {
+            return client;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true))
+                release(client);
+        }
+    }
+
+    private static class Pin {
+        final String key;
+        int refs;
+        boolean retired;
+
+        Pin(String key) {
+            this.key = key;
+        }
+    }
+
+    private interface Loader {
+        WireClient load() throws Exception;
+    }
 }
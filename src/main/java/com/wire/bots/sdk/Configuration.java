@@ -18,6 +18,15 @@
 
 package com.wire.bots.sdk;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.dropwizard.client.JerseyClientConfiguration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -36,6 +45,68 @@ public class Configuration extends io.dropwizard.Configuration {
     @NotNull
     public String auth;
 
+    /**
+     * CryptoBox session cache settings
+     */
+    @Valid
+    @NotNull
+    public Sessions sessions = new Sessions();
+
+    /**
+     * Open clients cache settings
+     */
+    @Valid
+    @NotNull
+    public Clients clients = new Clients();
+
+    /**
+     * Inbound message processing
+     */
+    @Valid
+    @NotNull
+    public Inbound inbound = new Inbound();
+
+    /**
+     * Upload dedupe cache settings
+     */
+    @Valid
+    @NotNull
+    public Uploads uploads = new Uploads();
+
+    /**
+     * Prekeys: pool of pre-generated CryptoBoxes for new bots and refills on member join
+     */
+    @Valid
+    @NotNull
+    public PreKeys prekeys = new PreKeys();
+
+    /**
+     * Downloaded assets cache settings
+     */
+    @Valid
+    @NotNull
+    public Assets assets = new Assets();
+
+    /**
+     * Broadcasts to all the bots: worker pool, rate limits and checkpoints
+     */
+    @Valid
+    @NotNull
+    public Broadcast broadcast = new Broadcast();
+
+    /**
+     * HTTP client for the Backend: connection pool, timeouts and keep-alive. Asset uploads are not pooled
+     */
+    @Valid
+    @NotNull
+    public JerseyClientConfiguration http = defaultHttp();
+
+    /**
+     * Number of threads used by the async clients for encryption
+     */
+    @Min(1)
+    public int asyncThreads = Runtime.getRuntime().availableProcessors();
+
     public String getCryptoDir() {
         return cryptoDir;
     }
@@ -44,6 +115,241 @@ public class Configuration extends io.dropwizard.Configuration {
         return auth;
     }
 
+    public Sessions getSessions() {
+        return sessions;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public Clients getClients() {
+        return clients;
+    }
+
+    public Inbound getInbound() {
+        return inbound;
+    }
+
+    public JerseyClientConfiguration getHttp() {
+        return http;
+    }
+
+    /**
+     * Dropwizard defaults with longer timeouts, long lived connections and no compression of the request bodies
+     */
+    private static JerseyClientConfiguration defaultHttp() {
+        JerseyClientConfiguration http = new JerseyClientConfiguration();
+        http.setTimeout(Duration.seconds(30));
+        http.setConnectionTimeout(Duration.seconds(5));
+        http.setConnectionRequestTimeout(Duration.seconds(5));
+        http.setTimeToLive(Duration.minutes(10));
+        http.setKeepAlive(Duration.minutes(1));
+        http.setValidateAfterInactivityPeriod(Duration.seconds(10));
+        http.setMaxConnections(1024);
+        http.setMaxConnectionsPerRoute(1024);
+        http.setGzipEnabledForRequests(false);
+        http.setChunkedEncodingEnabled(false);
+        http.setMinThreads(32);
+        http.setMaxThreads(128);
+        http.setWorkQueueSize(1024);
+        return http;
+    }
+
+    public Uploads getUploads() {
+        return uploads;
+    }
+
+    public Assets getAssets() {
+        return assets;
+    }
+
+    public PreKeys getPreKeys() {
+        return prekeys;
+    }
+
+    public Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    public static class Broadcast {
+        /**
+         * Number of workers shared by all the broadcasts. They load the clients and encrypt the messages
+         */
+        @Min(1)
+        public int threads = 20;
+
+        /**
+         * Max number of messages per second for all the bots
+         */
+        @DecimalMin("1")
+        public double rate = 100;
+
+        /**
+         * Max number of broadcast messages per minute into one conversation
+         */
+        @DecimalMin("0.01")
+        public double botRatePerMinute = 6;
+
+        /**
+         * Max number of messages in flight per broadcast. Messages sent after the last checkpoint are at most this
+         * many and get sent again when the broadcast resumes after a crash
+         */
+        @Min(1)
+        public int inflight = 1000;
+
+        /**
+         * Progress of the running broadcasts is saved this often
+         */
+        @Min(100)
+        public long checkpointMillis = 1000;
+    }
+
+    public static class PreKeys {
+        /**
+         * Number of boxes kept ready. 0 generates the keys while the bot is being created
+         */
+        @Min(0)
+        public int poolSize = 0;
+
+        /**
+         * The worker refills the pool when fewer boxes than this are left. Must not be greater than poolSize
+         */
+        @Min(0)
+        public int refillBelow = 8;
+
+        /**
+         * Number of prekeys per box, returned to the Backend when the bot is created. Conversations with more than
+         * batchSize / 8 members get the missing keys generated while the bot is being created
+         */
+        @Min(1)
+        @Max(0xFFFE)
+        public int batchSize = 128;
+
+        /**
+         * Members joining a conversation within this time are covered by one prekey refill
+         */
+        @Min(0)
+        public long replenishDelayMillis = 1000;
+
+        @JsonIgnore
+        @ValidationMethod(message = "prekeys.refillBelow must not be greater than prekeys.poolSize")
+        public boolean isRefillBelowValid() {
+            return poolSize == 0 || refillBelow <= poolSize;
+        }
+    }
+
+    public static class Assets {
+        /**
+         * Max number of bytes of decrypted assets kept in the heap. 0 disables the heap tier
+         */
+        @Min(0)
+        public long heapBytes = 0;
+
+        /**
+         * Directory for the disk tier. Assets are stored decrypted. Not set disables the disk tier
+         */
+        public String dir;
+
+        /**
+         * Max number of bytes of decrypted assets kept on disk
+         */
+        @Min(0)
+        public long diskBytes = 1024L * 1024 * 1024;
+    }
+
+    public static class Uploads {
+        /**
+         * Max number of remembered uploads. 0 uploads every picture and file again
+         */
+        @Min(0)
+        public long cacheSize = 0;
+
+        /**
+         * Uploaded assets are reused for at most this long
+         */
+        @Min(1)
+        public long ttlSeconds = 86400;
+    }
+
+    public static class Inbound {
+        /**
+         * Acknowledge the messages right away and process them on a worker pool. Messages of one bot are still
+         * processed in order
+         */
+        public boolean async = false;
+
+        /**
+         * Number of workers. Handlers usually wait on the network so this is a multiple of the cores
+         */
+        @Min(1)
+        public int threads = 4 * Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Max number of queued messages per bot
+         */
+        @Min(1)
+        public int queueSize = 1000;
+
+        /**
+         * Max number of queued messages for all the bots
+         */
+        @Min(1)
+        public int maxPending = 100000;
+
+        /**
+         * Retry-After sent with 503 when the queues are full
+         */
+        @Min(0)
+        public int retryAfterSeconds = 5;
+    }
+
+    public static class Clients {
+        /**
+         * Max number of bots that are kept open (each one holds an open CryptoBox)
+         */
+        @Min(1)
+        public long maxSize = 10000;
+
+        /**
+         * Bots not used for this long are closed
+         */
+        @Min(1)
+        public long idleSeconds = 1800;
+    }
+
+    public static class Sessions {
+        /**
+         * Max number of open sessions kept in memory per bot
+         */
+        @Min(1)
+        public int maxOpen = 256;
+
+        /**
+         * Sessions not used for this long are saved and closed
+         */
+        @Min(1)
+        public int idleSeconds = 300;
+
+        /**
+         * Write-behind interval for the session state. 0 saves the session after every encrypt/decrypt
+         */
+        @Min(0)
+        public int flushSeconds = 0;
+
+        /**
+         * Messages for at least this many devices are encrypted in parallel. 0 always encrypts on the calling thread
+         */
+        @Min(0)
+        public int parallelThreshold = 64;
+
+        /**
+         * Number of threads shared by all bots for parallel encryption. Read once on start
+         */
+        @Min(1)
+        public int parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
     public final static class ConfigValueNotFoundException extends RuntimeException {
         ConfigValueNotFoundException(String message) {
             super(message);
@@ -0,0 +1,142 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Decrypts an asset (IV + AES/CBC cipher) while it is being read and checks its SHA-256 on the fly.
+ * <p>
+ * The hash can only be checked once all the cipher has been read: the last block is held back until then and EOF is
+ * reported only if the hash matches, otherwise the read throws. Data read before EOF must be discarded if the stream
+ * fails.
+ */
+public class DecryptingInputStream extends InputStream {
+    private static final int BUFFER = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] otrKey;
+    private final byte[] sha256Challenge;
+    private final MessageDigest sha256;
+    private final byte[] iv = new byte[16];
+    private final byte[] buf = new byte[BUFFER];
+    private Cipher cipher;
+    private int ivLength;
+    private byte[] out;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * @param in              Encrypted asset
+     * @param otrKey          Encryption key
+     * @param sha256Challenge Expected SHA-256 of the encrypted asset
+     */
+    public DecryptingInputStream(InputStream in, byte[] otrKey, byte[] sha256Challenge) throws GeneralSecurityException {
+        this.in = in;
+        this.otrKey = otrKey;
+        this.sha256Challenge = sha256Challenge;
+        this.sha256 = MessageDigest.getInstance("SHA-256");
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        while (pos == limit) {
+            if (!fill())
+                return -1;
+        }
+
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(out, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads the next chunk of cipher and decrypts it
+     *
+     * @return False at the end of the verified stream
+     */
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+
+        pos = 0;
+        limit = 0;
+        try {
+            int n = in.read(buf);
+            if (n == -1) {
+                eof = true;
+                if (!MessageDigest.isEqual(sha256.digest(), sha256Challenge))
+                    throw new IOException("Failed sha256 check");
+                if (cipher == null)
+                    throw new IOException("Asset is too short");
+
+                out = cipher.doFinal();
+            } else {
+                sha256.update(buf, 0, n);
+
+                int off = 0;
+                if (cipher == null) {
+                    off = Math.min(n, iv.length - ivLength);
+                    System.arraycopy(buf, 0, iv, ivLength, off);
+                    ivLength += off;
+                    if (ivLength < iv.length)
+                        return true;
+
+                    cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+                    cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(otrKey, "AES"), new IvParameterSpec(iv));
+                }
+                out = cipher.update(buf, off, n - off);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        if (out != null)
+            limit = out.length;
+        return true;
+    }
+}
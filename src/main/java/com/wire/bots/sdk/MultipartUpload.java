@@ -0,0 +1,114 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.wire.bots.sdk.assets.IAsset;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Multipart body of an asset upload (json metadata + encrypted data) that is written straight to the connection.
+ * The length and the MD5 are known upfront so the body is sent with a fixed Content-Length and is never buffered
+ */
+public class MultipartUpload implements StreamingOutput {
+    private static final String MEDIA_TYPE = "multipart/mixed; boundary=frontier";
+    private static final byte[] TRAILER = "\r\n--frontier--\r\n".getBytes(StandardCharsets.UTF_8);
+
+    private final IAsset asset;
+    private final byte[] header;
+    private final long contentLength;
+
+    public MultipartUpload(IAsset asset) throws Exception {
+        this.asset = asset;
+
+        StringBuilder sb = new StringBuilder();
+
+        // Part 1
+        String strMetadata = String.format("{\"public\": %s, \"retention\": \"%s\"}",
+                asset.isPublic(),
+                asset.getRetention());
+
+        sb.append("--frontier\r\n");
+        sb.append("Content-Type: application/json; charset=utf-8\r\n");
+        sb.append("Content-Length: ")
+                .append(strMetadata.length())
+                .append("\r\n\r\n");
+        sb.append(strMetadata)
+                .append("\r\n");
+
+        // Part 2
+        long size = asset.getEncryptedSize();
+        sb.append("--frontier\r\n");
+        sb.append("Content-Type: ")
+                .append(asset.getMimeType())
+                .append("\r\n");
+        sb.append("Content-Length: ")
+                .append(size)
+                .append("\r\n");
+        sb.append("Content-MD5: ")
+                .append(asset.getEncryptedMd5())
+                .append("\r\n\r\n");
+
+        this.header = sb.toString().getBytes(StandardCharsets.UTF_8);
+        this.contentLength = header.length + size + TRAILER.length;
+    }
+
+    /**
+     * Posts this body
+     *
+     * @param req Request to the assets endpoint
+     * @return Response
+     */
+    public Response post(Invocation.Builder req) {
+        return req.header("Content-Length", contentLength).post(entity());
+    }
+
+    /**
+     * Posts this body asynchronously
+     *
+     * @param req      Request to the assets endpoint
+     * @param callback Response callback
+     */
+    public void post(Invocation.Builder req, InvocationCallback<Response> callback) {
+        req.header("Content-Length", contentLength).async().post(entity(), callback);
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        output.write(header);
+        asset.writeEncryptedData(output);
+        output.write(TRAILER);
+    }
+
+    private Entity<MultipartUpload> entity() {
+        return Entity.entity(this, MEDIA_TYPE);
+    }
+}
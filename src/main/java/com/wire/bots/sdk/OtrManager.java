@@ -31,13 +31,43 @@ import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Wrapper for the Crypto Box. This class is thread safe.
+ * <p/>
+ * Operations on one session (userId_clientId) are serialized on a lock stripe derived from the session id, so
+ * sessions of different devices can be encrypted and decrypted concurrently. Only the short lookups into the
+ * box's session table are serialized box wide.
+ * <p/>
+ * Open sessions are kept in memory. Depending on {@link Configuration.Sessions#flushSeconds} session state is either
+ * saved after every encrypt/decrypt or written behind: periodically, when the session is evicted and on close.
  */
 public class OtrManager implements Closeable {
-    private final Object lock = new Object();
+    private static final int STRIPES = 64;    // must be power of 2
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "OtrManager-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int QUEUE_PER_THREAD = 4;
+    private static ExecutorService encryptPool;   // shared by all boxes, see configureEncryptPool
+
+    private final Object boxLock = new Object();
+    private final Object[] stripes = new Object[STRIPES];
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final ConcurrentHashMap<String, CachedSession> sessions = new ConcurrentHashMap<>();
     private final CryptoBox box;
+    private final int maxOpen;
+    private final long idleMillis;
+    private final boolean writeBehind;
+    private final int parallelThreshold;
+    private final int parallelism;
+    private final ScheduledFuture<?> flusher;
 
     /**
      * Opens the CryptoBox using given directory path
@@ -50,7 +80,29 @@ public class OtrManager implements Closeable {
      * @throws Exception
      */
     public OtrManager(String cryptoDir) throws Exception {
+        this(cryptoDir, new Configuration.Sessions());
+    }
+
+    /**
+     * Opens the CryptoBox using given directory path and session cache settings
+     *
+     * @param cryptoDir The root storage directory of the box
+     * @param conf      Session cache and write-behind settings
+     * @throws Exception
+     */
+    public OtrManager(String cryptoDir, Configuration.Sessions conf) throws Exception {
         box = CryptoBox.open(cryptoDir);
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Object();
+
+        maxOpen = conf.maxOpen;
+        idleMillis = TimeUnit.SECONDS.toMillis(conf.idleSeconds);
+        writeBehind = conf.flushSeconds > 0;
+        parallelThreshold = conf.parallelThreshold;
+        parallelism = conf.parallelism;
+
+        long period = Math.max(1, writeBehind ? conf.flushSeconds : conf.idleSeconds);
+        flusher = scheduler.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.SECONDS);
     }
 
     /**
@@ -89,20 +141,17 @@ public class OtrManager implements Closeable {
      * @throws Exception throws Exception
      */
     public Recipients encrypt(PreKeys preKeys, byte[] content) throws Exception {
-        Recipients recipients = new Recipients();
+        ArrayList<Device> devices = new ArrayList<>();
         for (String userId : preKeys.keySet()) {
             HashMap<String, PreKey> clients = preKeys.get(userId);
             for (String clientId : clients.keySet()) {
                 PreKey pk = clients.get(clientId);
                 if (pk != null && pk.key != null) {
-                    String id = createId(userId, clientId);
-                    byte[] cipher = encryptFromPreKeys(id, pk, content);
-                    String s = Base64.getEncoder().encodeToString(cipher);
-                    recipients.add(userId, clientId, s);
+                    devices.add(new Device(userId, clientId, pk));
                 }
             }
         }
-        return recipients;
+        return encrypt(devices, content);
     }
 
     /**
@@ -113,18 +162,13 @@ public class OtrManager implements Closeable {
      * @param content Plain text content to be encrypted
      */
     public Recipients encrypt(Missing missing, byte[] content) throws Exception {
-        Recipients recipients = new Recipients();
+        ArrayList<Device> devices = new ArrayList<>();
         for (String userId : missing.toUserIds()) {
             for (String clientId : missing.toClients(userId)) {
-                String id = createId(userId, clientId);
-                byte[] cipher = encryptFromSession(id, content);
-                if (cipher != null) {
-                    String s = Base64.getEncoder().encodeToString(cipher);
-                    recipients.add(userId, clientId, s);
-                }
+                devices.add(new Device(userId, clientId, null));
             }
         }
-        return recipients;
+        return encrypt(devices, content);
     }
 
     /**
@@ -140,38 +184,188 @@ public class OtrManager implements Closeable {
         byte[] decode = Base64.getDecoder().decode(cypher);
         String id = createId(userId, clientId);
 
-        synchronized (lock) {
-            CryptoSession cryptoSession = null;
-            try {
-                cryptoSession = box.tryGetSession(id);
-                if (cryptoSession != null) {
-                    return cryptoSession.decrypt(decode);
+        closeLock.readLock().lock();
+        try {
+            synchronized (stripe(id)) {
+                CachedSession cached = null;
+                try {
+                    cached = getSession(id);
+                    if (cached != null) {
+                        return cached.session.decrypt(decode);
+                    }
+                    SessionMessage sessionMessage;
+                    synchronized (boxLock) {
+                        sessionMessage = box.initSessionFromMessage(id, decode);
+                    }
+                    cached = putSession(id, sessionMessage.getSession());
+                    return sessionMessage.getMessage();
+                } finally {
+                    touch(cached);
                 }
-                SessionMessage sessionMessage = box.initSessionFromMessage(id, decode);
-                cryptoSession = sessionMessage.getSession();
-                return sessionMessage.getMessage();
-            } finally {
-                saveSession(cryptoSession);
             }
+        } finally {
+            closeLock.readLock().unlock();
         }
     }
 
     /**
-     * Closes CryptoBox object. After this method is invoked no more operations on this object can be done
+     * Closes CryptoBox object. After this method is invoked no more operations on this object can be done.
+     * Waits for all the ongoing encrypt/decrypt operations to complete first and saves all unsaved sessions.
      */
     @Override
     public void close() {
-        synchronized (lock) {
-            box.close();
+        closeLock.writeLock().lock();
+        try {
+            flusher.cancel(false);
+            if (box.isClosed())
+                return;
+
+            for (Map.Entry<String, CachedSession> entry : sessions.entrySet()) {
+                saveQuietly(entry.getKey(), entry.getValue());
+            }
+            sessions.clear();
+
+            synchronized (boxLock) {
+                box.close();
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves all the sessions that changed since they were last saved and closes the sessions that have been idle
+     * for too long or exceed the max number of open sessions. Invoked periodically.
+     */
+    public void flush() {
+        if (!closeLock.readLock().tryLock())
+            return;   // closing
+
+        try {
+            if (box.isClosed())
+                return;
+
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, CachedSession> entry : sessions.entrySet()) {
+                String id = entry.getKey();
+                synchronized (stripe(id)) {
+                    CachedSession cached = entry.getValue();
+                    saveQuietly(id, cached);
+                    if (now - cached.lastUsed > idleMillis)
+                        evict(id, cached);
+                }
+            }
+
+            int excess = sessions.size() - maxOpen;
+            if (excess > 0) {
+                ArrayList<Map.Entry<String, CachedSession>> entries = new ArrayList<>(sessions.entrySet());
+                entries.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+                for (int i = 0; i < excess && i < entries.size(); i++) {
+                    String id = entries.get(i).getKey();
+                    synchronized (stripe(id)) {
+                        CachedSession cached = sessions.get(id);
+                        if (cached != null) {
+                            saveQuietly(id, cached);
+                            evict(id, cached);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Logger.error("OtrManager.flush: %s", e.getMessage());
+        } finally {
+            closeLock.readLock().unlock();
         }
     }
 
     public boolean isClosed() {
-        synchronized (lock) {
+        closeLock.readLock().lock();
+        try {
             return box.isClosed();
+        } finally {
+            closeLock.readLock().unlock();
         }
     }
 
+    /**
+     * Encrypts the content for all the given devices. When there are at least
+     * {@link Configuration.Sessions#parallelThreshold} devices they are split into chunks that are encrypted in
+     * parallel on the shared encryption pool. The calling thread encrypts one of the chunks itself.
+     *
+     * @param devices Devices to encrypt for
+     * @param content Plain text content to be encrypted
+     * @return Ciphers for all the devices that have the session or a prekey
+     * @throws Exception throws Exception
+     */
+    private Recipients encrypt(List<Device> devices, byte[] content) throws Exception {
+        if (parallelThreshold <= 0 || devices.size() < parallelThreshold)
+            return encryptChunk(devices, content);
+
+        int chunkSize = (devices.size() + parallelism - 1) / parallelism;
+        ArrayList<Future<Recipients>> futures = new ArrayList<>();
+        for (int from = chunkSize; from < devices.size(); from += chunkSize) {
+            List<Device> chunk = devices.subList(from, Math.min(from + chunkSize, devices.size()));
+            futures.add(getEncryptPool().submit(() -> encryptChunk(chunk, content)));
+        }
+
+        Recipients recipients = encryptChunk(devices.subList(0, chunkSize), content);
+        try {
+            for (Future<Recipients> future : futures) {
+                recipients.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<Recipients> future : futures)
+                future.cancel(false);
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        return recipients;
+    }
+
+    private Recipients encryptChunk(List<Device> devices, byte[] content) throws Exception {
+        Recipients recipients = new Recipients();
+        for (Device device : devices) {
+            String id = createId(device.userId, device.clientId);
+            byte[] cipher = device.preKey != null
+                    ? encryptFromPreKeys(id, device.preKey, content)
+                    : encryptFromSession(id, content);
+            if (cipher != null) {
+                String s = Base64.getEncoder().encodeToString(cipher);
+                recipients.add(device.userId, device.clientId, s);
+            }
+        }
+        return recipients;
+    }
+
+    /**
+     * Sizes the encryption pool shared by all the boxes. Must be called before the first parallel encrypt, later calls
+     * are ignored. Without it the pool has one thread per CPU.
+     * <p/>
+     * The queue is bounded: when it is full the submitting thread encrypts the chunk itself
+     *
+     * @param threads Number of threads
+     */
+    public static synchronized void configureEncryptPool(int threads) {
+        if (encryptPool != null) {
+            Logger.warning("OtrManager: encryption pool is already running");
+            return;
+        }
+        encryptPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD),
+                r -> {
+                    Thread thread = new Thread(r, "OtrManager-encrypt");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static synchronized ExecutorService getEncryptPool() {
+        if (encryptPool == null)
+            configureEncryptPool(Runtime.getRuntime().availableProcessors());
+        return encryptPool;
+    }
+
     /**
      * Inits the session from the prekey and encrypts the given content
      *
@@ -181,13 +375,22 @@ public class OtrManager implements Closeable {
      * @throws Exception throws Exception
      */
     private byte[] encryptFromPreKeys(String id, PreKey preKey, byte[] content) throws Exception {
-        synchronized (lock) {
-            CryptoSession cryptoSession = box.initSessionFromPreKey(id, toPreKey(preKey));
-            try {
-                return cryptoSession.encrypt(content);
-            } finally {
-                saveSession(cryptoSession);
+        closeLock.readLock().lock();
+        try {
+            synchronized (stripe(id)) {
+                CryptoSession cryptoSession;
+                synchronized (boxLock) {
+                    cryptoSession = box.initSessionFromPreKey(id, toPreKey(preKey));
+                }
+                CachedSession cached = putSession(id, cryptoSession);
+                try {
+                    return cryptoSession.encrypt(content);
+                } finally {
+                    touch(cached);
+                }
             }
+        } finally {
+            closeLock.readLock().unlock();
         }
     }
 
@@ -201,26 +404,113 @@ public class OtrManager implements Closeable {
      */
     @Nullable
     private byte[] encryptFromSession(String id, byte[] content) throws Exception {
-        synchronized (lock) {
-            CryptoSession session = null;
-            try {
-                session = box.tryGetSession(id);
-                if (session != null) {
-                    return session.encrypt(content);
+        closeLock.readLock().lock();
+        try {
+            synchronized (stripe(id)) {
+                CachedSession cached = null;
+                try {
+                    cached = getSession(id);
+                    if (cached != null) {
+                        return cached.session.encrypt(content);
+                    }
+                } finally {
+                    touch(cached);
                 }
-            } finally {
-                saveSession(session);
             }
+        } finally {
+            closeLock.readLock().unlock();
         }
         return null;
     }
 
-    private static void saveSession(CryptoSession cryptoSession) throws Exception {
-        if (cryptoSession != null) {
-            cryptoSession.save();
+    /**
+     * Returns the open session from the cache or loads it from the box. Caller must hold the stripe for this id
+     *
+     * @param id Session id: userId_clientId
+     * @return Cached session or NULL in case there is no session for the given {@param #id}
+     */
+    @Nullable
+    private CachedSession getSession(String id) throws Exception {
+        CachedSession cached = sessions.get(id);
+        if (cached != null)
+            return cached;
+
+        CryptoSession session;
+        synchronized (boxLock) {
+            session = box.tryGetSession(id);
+        }
+        return session != null ? putSession(id, session) : null;
+    }
+
+    /**
+     * Caches newly opened session. A session that is replaced is dropped unsaved as its state is superseded.
+     * Caller must hold the stripe for this id
+     */
+    private CachedSession putSession(String id, CryptoSession session) {
+        CachedSession cached = new CachedSession(session);
+        sessions.put(id, cached);
+        if (sessions.size() > maxOpen)
+            scheduler.execute(this::flush);
+        return cached;
+    }
+
+    /**
+     * Marks the session as used and changed. Saves it right away unless write-behind is enabled.
+     * Caller must hold the stripe for this session
+     */
+    private void touch(@Nullable CachedSession cached) throws Exception {
+        if (cached == null)
+            return;
+
+        cached.lastUsed = System.currentTimeMillis();
+        cached.dirty = true;
+        if (!writeBehind) {
+            cached.session.save();
+            cached.dirty = false;
+        }
+    }
+
+    /**
+     * Caller must hold the stripe for this id
+     */
+    private void saveQuietly(String id, CachedSession cached) {
+        if (!cached.dirty)
+            return;
+
+        try {
+            cached.session.save();
+            cached.dirty = false;
+        } catch (Exception e) {
+            Logger.error("OtrManager: failed to save session: %s, error: %s", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the session unless it still has unsaved changes. Caller must hold the stripe for this id
+     */
+    private void evict(String id, CachedSession cached) {
+        if (cached.dirty || !sessions.remove(id, cached))
+            return;
+
+        try {
+            synchronized (boxLock) {
+                box.closeSession(cached.session);
+            }
+        } catch (Exception e) {
+            Logger.warning("OtrManager: failed to close session: %s, error: %s", id, e.getMessage());
         }
     }
 
+    /**
+     * @param id Session id: userId_clientId
+     * @return Monitor that guards all operations on the given session
+     */
+    private Object stripe(String id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
     private static com.wire.cryptobox.PreKey toPreKey(PreKey preKey) {
         return new com.wire.cryptobox.PreKey(preKey.id, Base64.getDecoder().decode(preKey.key));
     }
@@ -235,4 +525,27 @@ public class OtrManager implements Closeable {
     private static String createId(String userId, String clientId) {
         return String.format("%s_%s", userId, clientId);
     }
+
+    private static class Device {
+        final String userId;
+        final String clientId;
+        @Nullable
+        final PreKey preKey;
+
+        Device(String userId, String clientId, @Nullable PreKey preKey) {
+            this.userId = userId;
+            this.clientId = clientId;
+            this.preKey = preKey;
+        }
+    }
+
+    private static class CachedSession {
+        final CryptoSession session;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean dirty;
+
+        CachedSession(CryptoSession session) {
+            this.session = session;
+        }
+    }
 }
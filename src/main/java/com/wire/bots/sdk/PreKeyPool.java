@@ -0,0 +1,197 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wire.bots.sdk.models.otr.PreKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Keeps CryptoBoxes ready for new bots so that provisioning does not generate keys inline. Prekeys belong to the box
+ * that generated them, so the pool holds whole boxes: each one is a directory with the identity, the last prekey and a
+ * batch of prekeys, plus the public parts of those prekeys. A background worker generates the boxes under
+ * [cryptoDir]/.prekeys and refills the pool whenever it drops below the threshold. When a bot is created a box is
+ * bound to it by renaming its directory to the bot's crypto directory.
+ */
+public class PreKeyPool {
+    private static final String STAGING = ".prekeys";
+    private static final String PREKEYS = "prekeys.json";
+    private static final String TMP = ".tmp";
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path staging;
+    private final Configuration.PreKeys conf;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Path> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean filling = new AtomicBoolean();
+    private final Meter misses = new Meter();
+    private final Timer generate = new Timer();
+
+    /**
+     * @param cryptoDir Crypto directory of the bots. The boxes are generated on the same volume so they can be moved
+     * @param conf      Pool settings
+     * @param executor  Runs the worker
+     */
+    public PreKeyPool(String cryptoDir, Configuration.PreKeys conf, Executor executor) {
+        this.staging = Paths.get(cryptoDir, STAGING);
+        this.conf = conf;
+        this.executor = executor;
+    }
+
+    /**
+     * Picks up the boxes generated before a restart, drops the incomplete ones and starts filling the pool
+     */
+    public void start() throws IOException {
+        Files.createDirectories(staging);
+        try (Stream<Path> dirs = Files.list(staging)) {
+            dirs.forEach(dir -> {
+                if (!dir.getFileName().toString().endsWith(TMP) && Files.exists(dir.resolve(PREKEYS)))
+                    ready.add(dir);
+                else
+                    delete(dir);
+            });
+        }
+        fill(true);
+    }
+
+    /**
+     * Binds a box from the pool to the bot
+     *
+     * @param botDir Crypto directory of the new bot. Must not exist yet
+     * @return Public prekeys of the box or null if the pool is empty. The caller then generates the keys itself
+     */
+    public Batch take(File botDir) {
+        try {
+            Path box;
+            while ((box = ready.poll()) != null) {
+                try {
+                    Batch batch = mapper.readValue(box.resolve(PREKEYS).toFile(), Batch.class);
+                    Files.move(box, botDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    Files.deleteIfExists(botDir.toPath().resolve(PREKEYS));
+                    return batch;
+                } catch (IOException e) {
+                    Logger.warning("PreKeyPool: failed to bind %s to %s: %s", box, botDir, e);
+                    if (Files.exists(box))
+                        delete(box);
+                    if (botDir.exists())
+                        return null;
+                }
+            }
+            misses.mark();
+            return null;
+        } finally {
+            fill(false);
+        }
+    }
+
+    public int getDepth() {
+        return ready.size();
+    }
+
+    /**
+     * Registers the pool depth, the empty pool hits and the time to generate one box
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("prekeys.pool.depth", (Gauge<Integer>) ready::size);
+        metrics.register("prekeys.pool.misses", misses);
+        metrics.register("prekeys.pool.generate", generate);
+    }
+
+    /**
+     * Schedules the worker unless it is running already
+     *
+     * @param force Fill even if the pool has not dropped below the threshold
+     */
+    private void fill(boolean force) {
+        if (!force && ready.size() >= conf.refillBelow)
+            return;
+        if (!filling.compareAndSet(false, true))
+            return;
+
+        executor.execute(() -> {
+            try {
+                while (ready.size() < conf.poolSize)
+                    ready.add(generate());
+            } catch (Exception e) {
+                Logger.error("PreKeyPool: failed to generate a box: %s", e);
+            } finally {
+                filling.set(false);
+            }
+        });
+    }
+
+    private Path generate() throws Exception {
+        String id = UUID.randomUUID().toString();
+        Path tmp = Files.createDirectories(staging.resolve(id + TMP));
+        try (Timer.Context ignored = generate.time()) {
+            OtrManager otr = new OtrManager(tmp.toString());
+            Batch batch = new Batch();
+            try {
+                batch.lastPreKey = otr.newLastPreKey();
+                batch.preKeys = otr.newPreKeys(0, conf.batchSize);
+            } finally {
+                otr.close();
+            }
+            mapper.writeValue(tmp.resolve(PREKEYS).toFile(), batch);
+
+            Path box = staging.resolve(id);
+            Files.move(tmp, box, StandardCopyOption.ATOMIC_MOVE);
+            return box;
+        } catch (Exception e) {
+            delete(tmp);
+            throw e;
+        }
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            Logger.warning("PreKeyPool: failed to delete %s: %s", dir, e);
+        }
+    }
+
+    /**
+     * Public parts of the prekeys of one box
+     */
+    public static class Batch {
+        public PreKey lastPreKey;
+        public ArrayList<PreKey> preKeys;
+    }
+}
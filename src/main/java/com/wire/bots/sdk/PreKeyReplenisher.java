@@ -0,0 +1,139 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.wire.bots.sdk.models.otr.PreKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tops up the bots' prekeys on the Backend when new members join, off the inbound thread.
+ * <p/>
+ * Every new member is expected to use up to 8 prekeys. Joins are collected per bot for a short delay and handled in one
+ * refill. Each bot keeps an estimate of the prekeys it has left: the Backend is only asked for the available prekeys
+ * when the estimate is unknown or does not cover the joins, and new prekeys are generated and uploaded only when the
+ * Backend has fewer left than needed.
+ */
+public class PreKeyReplenisher {
+    private static final int PER_MEMBER = 8;
+    private static final int LAST_PREKEY = 0xFFFF;
+    private static final int MAX_ID = 0xFFFE;
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "PreKeyReplenisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ClientRepo repo;
+    private final long delayMillis;
+    private final Cache<String, State> bots = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    /**
+     * @param repo        Clients of the bots
+     * @param delayMillis Joins that arrive within this time are handled in one refill
+     */
+    public PreKeyReplenisher(ClientRepo repo, long delayMillis) {
+        this.repo = repo;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Schedules a refill for the bot unless one is pending already
+     *
+     * @param botId   Bot
+     * @param members Number of members that joined
+     */
+    public void onMemberJoin(String botId, int members) {
+        if (members <= 0)
+            return;
+
+        State state = bots.asMap().computeIfAbsent(botId, id -> new State());
+        boolean schedule;
+        synchronized (state) {
+            state.demand += PER_MEMBER * members;
+            schedule = !state.scheduled;
+            state.scheduled = true;
+        }
+        if (schedule)
+            scheduler.schedule(() -> replenish(botId, state), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void replenish(String botId, State state) {
+        int demand;
+        synchronized (state) {
+            demand = Math.min(state.demand, MAX_ID);
+            state.demand = 0;
+            state.scheduled = false;
+        }
+
+        // refills of one bot never overlap, joins keep being collected meanwhile
+        synchronized (state.refill) {
+            try (ClientRepo.Lease lease = repo.acquire(botId)) {
+                if (lease == null) {
+                    bots.invalidate(botId);
+                    return;
+                }
+                WireClient client = lease.getClient();
+
+                if (state.estimate < demand) {
+                    ArrayList<Integer> available = client.getAvailablePrekeys();
+                    available.remove(Integer.valueOf(LAST_PREKEY));
+                    state.estimate = available.size();
+                    if (!available.isEmpty())
+                        state.lastId = Collections.max(available);
+                }
+
+                if (state.estimate < demand) {
+                    int from = (state.lastId + 1) % (MAX_ID + 1);
+                    ArrayList<PreKey> keys = client.newPreKeys(from, demand);
+                    client.uploadPreKeys(keys);
+                    state.estimate += keys.size();
+                    state.lastId = keys.get(keys.size() - 1).id;
+                    Logger.info("Uploaded %d prekeys. Bot: %s", keys.size(), botId);
+                }
+
+                state.estimate -= demand;
+            } catch (Exception e) {
+                Logger.error("PreKeyReplenisher: bot: %s, error: %s", botId, e);
+                state.estimate = -1;
+            }
+        }
+    }
+
+    private static class State {
+        final Object refill = new Object();
+
+        // guarded by this
+        int demand;
+        boolean scheduled;
+
+        // guarded by refill
+        int estimate = -1;
+        int lastId = -1;
+    }
+}
@@ -0,0 +1,72 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+package com.wire.bots.sdk;
+
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Callback for async Jersey invocations that completes as a future once the response has been read
+ *
+ * @param <T> Type the response is read into
+ */
+public class ResponseFuture<T> extends CompletableFuture<T> implements InvocationCallback<Response> {
+    private final String endpoint;
+    private final Reader<T> reader;
+
+    public ResponseFuture(Reader<T> reader) {
+        this(null, reader);
+    }
+
+    /**
+     * @param endpoint Endpoint the request is tagged with. Failed calls are counted in its errors meter
+     * @param reader   Reads the response
+     */
+    public ResponseFuture(String endpoint, Reader<T> reader) {
+        this.endpoint = endpoint;
+        this.reader = reader;
+    }
+
+    @Override
+    public void completed(Response response) {
+        try {
+            complete(reader.read(response));
+        } catch (Throwable e) {
+            completeExceptionally(e);
+        } finally {
+            // release the connection if the reader did not consume the entity
+            response.close();
+        }
+    }
+
+    @Override
+    public void failed(Throwable throwable) {
+        if (endpoint != null)
+            BackendMetrics.failed(endpoint);
+        completeExceptionally(throwable);
+    }
+
+    public interface Reader<T> {
+        /**
+         * Checks the status and reads the entity. Throw to fail the future
+         */
+        T read(Response response) throws Exception;
+    }
+}
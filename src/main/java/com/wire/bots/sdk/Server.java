@@ -21,21 +21,32 @@ package com.wire.bots.sdk;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.health.HealthCheck;
+import com.wire.bots.sdk.broadcast.Broadcaster;
+import com.wire.bots.sdk.server.InboundDispatcher;
 import com.wire.bots.sdk.server.resources.BotsResource;
 import com.wire.bots.sdk.server.resources.MessageResource;
 import com.wire.bots.sdk.server.resources.StatusResource;
 import com.wire.bots.sdk.server.tasks.AvailablePrekeysTask;
 import com.wire.bots.sdk.server.tasks.BroadcastAllTask;
 import com.wire.bots.sdk.server.tasks.ConversationTask;
+import com.wire.bots.sdk.server.tasks.SegmentTask;
+import com.wire.bots.sdk.storage.IndexedBotStorage;
+import com.wire.bots.sdk.storage.LogBotStorage;
 import com.wire.bots.sdk.user.Endpoint;
 import com.wire.bots.sdk.user.UserClient;
 import io.dropwizard.Application;
+import io.dropwizard.client.JerseyClientBuilder;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.servlets.tasks.Task;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
+import javax.ws.rs.client.Client;
 import java.io.File;
+import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,7 +55,10 @@ import java.util.concurrent.TimeUnit;
  * @param <Config>
  */
 public abstract class Server<Config extends Configuration> extends Application<Config> {
+    private static final int INDEX_FLUSH_SECONDS = 10;
+
     protected ClientRepo repo;
+    protected PreKeyReplenisher replenisher;
     protected Config config;
     protected Environment environment;
 
@@ -77,6 +91,8 @@ public abstract class Server<Config extends Configuration> extends Application<C
         this.environment = env;
 
         initTelemetry(config, env);
+        initTransport(config, env);
+        OtrManager.configureEncryptPool(config.getSessions().parallelism);
 
         if (!runInUserMode(config, env)) {
             runInBotMode(config, env);
@@ -85,14 +101,24 @@ public abstract class Server<Config extends Configuration> extends Application<C
         onRun(config, env);
     }
 
-    private void runInBotMode(Config config, Environment env) {
+    private void runInBotMode(Config config, Environment env) throws IOException {
+        UploadCache uploads = uploadCache(config, env);
+        AssetCache assets = assetCache(config, env);
         WireClientFactory factory = (botId, convId, clientId, token) -> {
             String path = String.format("%s/%s", config.getCryptoDir(), botId);
-            OtrManager otrManager = new OtrManager(path);
-            return new BotClient(otrManager, botId, convId, clientId, token);
+            OtrManager otrManager = new OtrManager(path, config.getSessions());
+            return new BotClient(otrManager, botId, convId, clientId, token, uploads, assets);
         };
 
-        repo = new ClientRepo(factory, config.getCryptoDir());
+        IndexedBotStorage storage = new IndexedBotStorage(new LogBotStorage(config.getCryptoDir()));
+        repo = new ClientRepo(factory,
+                config.getCryptoDir(),
+                asyncExecutor(config, env),
+                config.getClients(),
+                storage);
+        manageRepo(env);
+        flushIndex(storage, env);
+        replenisher = new PreKeyReplenisher(repo, config.getPreKeys().replenishDelayMillis);
 
         MessageHandlerBase handler = createHandler(config, env);
 
@@ -101,7 +127,8 @@ public abstract class Server<Config extends Configuration> extends Application<C
         botResource(config, env, handler);
         messageResource(config, env, handler);
 
-        addTask(new BroadcastAllTask(config, repo), env);
+        addTask(new BroadcastAllTask(broadcaster(config, env), storage), env);
+        addTask(new SegmentTask(storage), env);
         addTask(new ConversationTask(repo), env);
         addTask(new AvailablePrekeysTask(repo), env);
     }
@@ -111,31 +138,109 @@ public abstract class Server<Config extends Configuration> extends Application<C
         String password = System.getProperty("password");
 
         if (email != null && password != null) {
+            UploadCache uploads = uploadCache(config, env);
+            AssetCache assets = assetCache(config, env);
             WireClientFactory userClientFactory = (botId, convId, clientId, token) -> {
                 String path = String.format("%s/%s", config.getCryptoDir(), botId);
-                OtrManager otrManager = new OtrManager(path);
-                return new UserClient(otrManager, botId, convId, clientId, token);
+                OtrManager otrManager = new OtrManager(path, config.getSessions());
+                return new UserClient(otrManager, botId, convId, clientId, token, uploads, assets);
             };
-            repo = new ClientRepo(userClientFactory, config.getCryptoDir());
-
-
-            Endpoint ep = new Endpoint(config);
+            repo = new ClientRepo(userClientFactory,
+                    config.getCryptoDir(),
+                    asyncExecutor(config, env),
+                    config.getClients(),
+                    new LogBotStorage(config.getCryptoDir()));
+            manageRepo(env);
+            replenisher = new PreKeyReplenisher(repo, config.getPreKeys().replenishDelayMillis);
+
+            Endpoint ep = new Endpoint(config, repo.getStorage());
             String userId = ep.signIn(email, password, true);
             Logger.info(String.format("Logged in as User: %s userId: %s", email, userId));
 
             MessageHandlerBase handler = createHandler(config, env);
-            ep.connectWebSocket(new MessageResource(handler, config, repo));
+            ep.connectWebSocket(new MessageResource(handler, config, repo, replenisher));
             return true;
         }
         return false;
     }
 
     protected void messageResource(Config config, Environment env, MessageHandlerBase handler) {
-        addResource(new MessageResource(handler, config, repo), env);
+        if (!config.getInbound().async) {
+            addResource(new MessageResource(handler, config, repo, replenisher), env);
+            return;
+        }
+
+        ExecutorService executor = env.lifecycle()
+                .executorService("inbound-%d")
+                .minThreads(config.getInbound().threads)
+                .maxThreads(config.getInbound().threads)
+                .build();
+        MessageResource resource = new MessageResource(handler, config, repo, executor, replenisher);
+        InboundDispatcher dispatcher = resource.getDispatcher();
+        dispatcher.registerMetrics(env.metrics());
+
+        // stopped before the workers: process what has been acknowledged already
+        env.lifecycle().manage(new Managed() {
+            @Override
+            public void start() throws Exception {
+            }
+
+            @Override
+            public void stop() throws Exception {
+                if (!dispatcher.drain(30, TimeUnit.SECONDS))
+                    Logger.warning("Inbound: %d messages not processed on shutdown", dispatcher.getPending());
+            }
+        });
+        addResource(resource, env);
     }
 
     protected void botResource(Config config, Environment env, MessageHandlerBase handler) {
-        addResource(new BotsResource(handler, config, repo), env);
+        addResource(new BotsResource(handler, config, repo, preKeyPool(config, env)), env);
+    }
+
+    private PreKeyPool preKeyPool(Config config, Environment env) {
+        if (config.getPreKeys().poolSize == 0)
+            return null;
+
+        ExecutorService executor = env.lifecycle()
+                .executorService("prekeys-%d")
+                .minThreads(1)
+                .maxThreads(1)
+                .build();
+        PreKeyPool pool = new PreKeyPool(config.getCryptoDir(), config.getPreKeys(), executor);
+        try {
+            pool.start();
+        } catch (IOException e) {
+            Logger.error("PreKeyPool: %s. Keys are generated while creating the bots", e);
+            return null;
+        }
+        pool.registerMetrics(env.metrics());
+        return pool;
+    }
+
+    /**
+     * Broadcasts run on their own pool. The broadcaster is stopped before the pool so it can save its checkpoints
+     */
+    private Broadcaster broadcaster(Config config, Environment env) throws IOException {
+        ExecutorService executor = env.lifecycle()
+                .executorService("broadcast-%d")
+                .minThreads(config.getBroadcast().threads)
+                .maxThreads(config.getBroadcast().threads)
+                .build();
+        Broadcaster broadcaster = new Broadcaster(repo, config.getCryptoDir(), config.getBroadcast(), executor);
+        broadcaster.registerMetrics(env.metrics());
+        env.lifecycle().manage(new Managed() {
+            @Override
+            public void start() throws Exception {
+                broadcaster.start();
+            }
+
+            @Override
+            public void stop() throws Exception {
+                broadcaster.stop();
+            }
+        });
+        return broadcaster;
     }
 
     protected void addTask(Task task, Environment env) {
@@ -146,7 +251,74 @@ public abstract class Server<Config extends Configuration> extends Application<C
         env.jersey().register(component);
     }
 
+    private ExecutorService asyncExecutor(Config config, Environment env) {
+        return env.lifecycle()
+                .executorService("async-client-%d")
+                .minThreads(config.getAsyncThreads())
+                .maxThreads(config.getAsyncThreads())
+                .build();
+    }
+
+    private UploadCache uploadCache(Config config, Environment env) {
+        UploadCache uploads = new UploadCache(config.getUploads().cacheSize, config.getUploads().ttlSeconds);
+        uploads.registerMetrics(env.metrics());
+        return uploads;
+    }
+
+    private AssetCache assetCache(Config config, Environment env) throws IOException {
+        Configuration.Assets conf = config.getAssets();
+        AssetCache assets = new AssetCache(conf.heapBytes, conf.dir, conf.diskBytes);
+        assets.registerMetrics(env.metrics());
+        return assets;
+    }
+
+    /**
+     * Saves the conversation sizes kept in the bot index periodically. The rest is saved when the repo is closed
+     */
+    private void flushIndex(IndexedBotStorage storage, Environment env) {
+        ScheduledExecutorService scheduler = env.lifecycle()
+                .scheduledExecutorService("bot-index-%d")
+                .build();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                storage.flush();
+            } catch (Exception e) {
+                Logger.error("Bot index: failed to save: %s", e);
+            }
+        }, INDEX_FLUSH_SECONDS, INDEX_FLUSH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Exports the repo metrics and closes all the clients on shutdown so that the sessions that are written behind
+     * get saved
+     */
+    private void manageRepo(Environment env) {
+        repo.registerMetrics(env.metrics());
+        env.lifecycle().manage(new Managed() {
+            @Override
+            public void start() throws Exception {
+            }
+
+            @Override
+            public void stop() throws Exception {
+                repo.close();
+            }
+        });
+    }
+
+    /**
+     * Pooled keep-alive client for the Backend calls. Dropwizard exports the pool and the request metrics
+     */
+    private void initTransport(Config config, Environment env) {
+        Client client = new JerseyClientBuilder(env)
+                .using(config.getHttp())
+                .build("wire");
+        Transport.configure(client);
+    }
+
     private void initTelemetry(final Config conf, Environment env) {
+        BackendMetrics.register(env.metrics());
+
         env.healthChecks().register("ok", new HealthCheck() {
             @Override
             protected Result check() throws Exception {
@@ -0,0 +1,76 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+
+import javax.ws.rs.client.Client;
+
+/**
+ * Jersey clients shared by all the calls to the Backend. Until {@link #configure(Client)} is called the JDK
+ * HttpURLConnection connector is used. The server replaces it with a pooled keep-alive client built from the
+ * configuration. Both clients record {@link BackendMetrics}.
+ */
+public final class Transport {
+    private static volatile Client client;
+
+    private Transport() {
+    }
+
+    /**
+     * @return Client for the API calls
+     */
+    public static Client client() {
+        Client ret = client;
+        return ret != null ? ret : Uploads.client;
+    }
+
+    /**
+     * Asset uploads always use the HttpURLConnection connector. It streams a body of known length with a fixed
+     * Content-Length, the Apache connector can only send such a body chunked or buffer it.
+     *
+     * @return Client for the asset uploads
+     */
+    public static Client uploads() {
+        return Uploads.client;
+    }
+
+    /**
+     * @param pooled Client used for the API calls from now on
+     */
+    public static void configure(Client pooled) {
+        client = pooled.register(new BackendMetrics());
+    }
+
+    private static class Uploads {
+        static final Client client;
+
+        static {
+            ClientConfig cfg = new ClientConfig(JacksonJsonProvider.class);
+            // stream request bodies of known length (asset uploads) instead of buffering them
+            cfg.property(HttpUrlConnectorProvider.USE_FIXED_LENGTH_STREAMING, true);
+            cfg.register(new BackendMetrics());
+            client = JerseyClientBuilder.createClient(cfg);
+        }
+    }
+}
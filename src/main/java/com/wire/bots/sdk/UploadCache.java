@@ -0,0 +1,279 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.wire.bots.sdk.assets.FileAsset;
+import com.wire.bots.sdk.assets.IAsset;
+import com.wire.bots.sdk.assets.Picture;
+import com.wire.bots.sdk.models.AssetKey;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers uploaded assets by the digest of their content, so sending the same picture or file again (to the same
+ * or another conversation) posts only the message that points to the asset that is already on the Backend.
+ * <p>
+ * The key covers the content, the mime type, the visibility and the retention, so a public upload is never reused for
+ * a private asset or the other way around. Assets with `expiring` retention are never cached, other entries expire
+ * after the configured time or before the asset expires on the Backend, whichever comes first.
+ */
+public class UploadCache {
+    private static final long EXPIRY_MARGIN = TimeUnit.HOURS.toMillis(1);
+
+    private final Cache<String, Remote> cache;
+    private final long maxSize;
+    private final long ttl;
+
+    /**
+     * @param maxSize    Max number of remembered uploads. 0 disables the cache
+     * @param ttlSeconds Max time an upload is reused. 0 disables the cache
+     */
+    public UploadCache(long maxSize, long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public static UploadCache disabled() {
+        return new UploadCache(0, 0);
+    }
+
+    /**
+     * Uploads the picture unless the same one has been uploaded already. Sets the remote data on the picture
+     *
+     * @param image    Picture
+     * @param uploader Uploads the asset
+     */
+    public void upload(Picture image, Uploader uploader) throws Exception {
+        String digest = isEnabled(image) ? digest(image, image.getImageData()) : null;
+        Remote remote = get(digest);
+        if (remote != null) {
+            image.setOtrKey(remote.otrKey);
+            image.setSha256(remote.sha256);
+            image.setAssetKey(remote.assetKey);
+            image.setAssetToken(remote.assetToken);
+            return;
+        }
+
+        AssetKey assetKey = uploader.upload(image);
+        image.setAssetKey(assetKey.key);
+        image.setAssetToken(assetKey.token);
+        put(digest, image.getOtrKey(), image.getSha256(), assetKey);
+    }
+
+    /**
+     * Uploads the file unless the same one has been uploaded already. Sets the remote data on the asset
+     *
+     * @param asset    File asset
+     * @param uploader Uploads the asset
+     */
+    public void upload(FileAsset asset, Uploader uploader) throws Exception {
+        String digest = null;
+        if (isEnabled(asset)) {
+            try (InputStream input = new FileInputStream(asset.getFile())) {
+                digest = digest(asset, input);
+            }
+        }
+        Remote remote = get(digest);
+        if (remote != null) {
+            asset.setOtrKey(remote.otrKey);
+            asset.setSha256(remote.sha256);
+            asset.setAssetKey(remote.assetKey);
+            asset.setAssetToken(remote.assetToken);
+            return;
+        }
+
+        AssetKey assetKey = uploader.upload(asset);
+        asset.setAssetKey(assetKey.key);
+        asset.setAssetToken(assetKey.token);
+        put(digest, asset.getOtrKey(), asset.getSha256(), assetKey);
+    }
+
+    /**
+     * Async variant of {@link #upload(Picture, Uploader)}. The digest and the encryption are done on the executor
+     *
+     * @param image    Picture
+     * @param uploader Uploads the asset
+     * @param executor Executor for the CPU bound work
+     * @return Future completed once the remote data is set on the picture
+     */
+    public CompletableFuture<Void> upload(Picture image, AsyncUploader uploader, Executor executor) {
+        return Util.supplyAsync(() -> {
+            String digest = isEnabled(image) ? digest(image, image.getImageData()) : null;
+            Remote remote = get(digest);
+            if (remote != null) {
+                image.setOtrKey(remote.otrKey);
+                image.setSha256(remote.sha256);
+                image.setAssetKey(remote.assetKey);
+                image.setAssetToken(remote.assetToken);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            // encrypts the picture
+            byte[] sha256 = image.getSha256();
+            return uploader.upload(image).thenAccept(assetKey -> {
+                image.setAssetKey(assetKey.key);
+                image.setAssetToken(assetKey.token);
+                put(digest, image.getOtrKey(), sha256, assetKey);
+            });
+        }, executor).thenCompose(upload -> upload);
+    }
+
+    /**
+     * Async variant of {@link #upload(FileAsset, Uploader)}. The digest and the encryption are done on the executor
+     *
+     * @param asset    File asset
+     * @param uploader Uploads the asset
+     * @param executor Executor for the CPU bound work
+     * @return Future completed once the remote data is set on the asset
+     */
+    public CompletableFuture<Void> upload(FileAsset asset, AsyncUploader uploader, Executor executor) {
+        return Util.supplyAsync(() -> {
+            String digest = null;
+            if (isEnabled(asset)) {
+                try (InputStream input = new FileInputStream(asset.getFile())) {
+                    digest = digest(asset, input);
+                }
+            }
+            Remote remote = get(digest);
+            if (remote != null) {
+                asset.setOtrKey(remote.otrKey);
+                asset.setSha256(remote.sha256);
+                asset.setAssetKey(remote.assetKey);
+                asset.setAssetToken(remote.assetToken);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            // encrypts the file to learn its digests
+            byte[] sha256 = asset.getSha256();
+            String key = digest;
+            return uploader.upload(asset).thenAccept(assetKey -> {
+                asset.setAssetKey(assetKey.key);
+                asset.setAssetToken(assetKey.token);
+                put(key, asset.getOtrKey(), sha256, assetKey);
+            });
+        }, executor).thenCompose(upload -> upload);
+    }
+
+    /**
+     * Registers cache size and hit rate
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("uploads.size", (Gauge<Long>) cache::size);
+        metrics.register("uploads.hit-rate", (Gauge<Double>) () -> cache.stats().hitRate());
+    }
+
+    private boolean isEnabled(IAsset asset) {
+        return maxSize > 0 && ttl > 0 && !"expiring".equals(asset.getRetention());
+    }
+
+    private Remote get(String digest) {
+        if (digest == null)
+            return null;
+
+        Remote remote = cache.getIfPresent(digest);
+        if (remote != null && remote.expires <= System.currentTimeMillis()) {
+            cache.invalidate(digest);
+            return null;
+        }
+        return remote;
+    }
+
+    private void put(String digest, byte[] otrKey, byte[] sha256, AssetKey assetKey) {
+        if (digest == null)
+            return;
+
+        long expires = System.currentTimeMillis() + ttl;
+        if (assetKey.expires != null) {
+            try {
+                expires = Math.min(expires, Instant.parse(assetKey.expires).toEpochMilli() - EXPIRY_MARGIN);
+            } catch (Exception e) {
+                Logger.warning("UploadCache: unexpected expires: %s", assetKey.expires);
+            }
+        }
+        cache.put(digest, new Remote(otrKey, sha256, assetKey.key, assetKey.token, expires));
+    }
+
+    private static String digest(IAsset asset, byte[] content) throws NoSuchAlgorithmException {
+        MessageDigest sha256 = header(asset);
+        sha256.update(content);
+        return Base64.getEncoder().encodeToString(sha256.digest());
+    }
+
+    private static String digest(IAsset asset, InputStream content) throws NoSuchAlgorithmException, IOException {
+        MessageDigest sha256 = header(asset);
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = content.read(buffer)) != -1)
+            sha256.update(buffer, 0, n);
+        return Base64.getEncoder().encodeToString(sha256.digest());
+    }
+
+    private static MessageDigest header(IAsset asset) throws NoSuchAlgorithmException {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        String header = String.format("%s\n%s\n%s\n", asset.getMimeType(), asset.isPublic(), asset.getRetention());
+        sha256.update(header.getBytes(StandardCharsets.UTF_8));
+        return sha256;
+    }
+
+    public interface Uploader {
+        AssetKey upload(IAsset asset) throws Exception;
+    }
+
+    public interface AsyncUploader {
+        CompletableFuture<AssetKey> upload(IAsset asset);
+    }
+
+    private static class Remote {
+        final byte[] otrKey;
+        final byte[] sha256;
+        final String assetKey;
+        final String assetToken;
+        final long expires;
+
+        Remote(byte[] otrKey, byte[] sha256, String assetKey, String assetToken, long expires) {
+            this.otrKey = otrKey;
+            this.sha256 = sha256;
+            this.assetKey = assetKey;
+            this.assetToken = assetToken;
+            this.expires = expires;
+        }
+    }
+}
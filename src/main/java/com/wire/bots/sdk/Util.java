@@ -35,6 +35,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class Util {
 
@@ -44,11 +47,10 @@ public class Util {
         Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
         SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
         c.init(Cipher.ENCRYPT_MODE, secretKeySpec, new IvParameterSpec(iv));
-        byte[] bytes = c.doFinal(dataToSend);
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        os.write(iv);
-        os.write(bytes);
-        return os.toByteArray();
+        byte[] ret = new byte[iv.length + c.getOutputSize(dataToSend.length)];
+        System.arraycopy(iv, 0, ret, 0, iv.length);
+        c.doFinal(dataToSend, 0, dataToSend.length, ret, iv.length);
+        return ret;
     }
 
     public static byte[] decrypt(byte[] key, byte[] encrypted) throws Exception {
@@ -118,6 +120,17 @@ public class Util {
         return output.toByteArray();
     }
 
+    public static long copy(InputStream input, OutputStream output) throws IOException {
+        long count = 0;
+        int n;
+        byte[] buffer = new byte[1024 * 64];
+        while (-1 != (n = input.read(buffer))) {
+            output.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
     public static boolean compareTokens(String token1, String token2) {
         if (token1 == null || token2 == null)
             return false;
@@ -133,6 +146,29 @@ public class Util {
         }
     }
 
+    /**
+     * Like {@link CompletableFuture#supplyAsync} but the task may throw checked exceptions
+     *
+     * @param callable Task to run
+     * @param executor Executor to run the task on
+     * @return Future completed with the result of the task or exceptionally with whatever it threw
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> callable, Executor executor) {
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ret.complete(callable.call());
+                } catch (Throwable e) {
+                    ret.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
     public static String getDomain(){
         String env = System.getProperty("env", "prod");
         return env.equals("prod") ? "wire.com" : "zinfra.io";
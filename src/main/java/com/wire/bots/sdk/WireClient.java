@@ -26,11 +26,19 @@ import com.wire.bots.sdk.models.otr.PreKey;
 import com.wire.bots.sdk.server.model.Conversation;
 import com.wire.bots.sdk.server.model.User;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * Thread safe class for postings into this conversation
@@ -129,6 +137,25 @@ public interface WireClient extends Closeable {
 
     void sendOT(OT ot) throws Exception;
 
+    /**
+     * Encrypts and posts any generic message into this conversation. Use
+     * {@link com.wire.bots.sdk.assets.PreparedMessage} to send the same message into many conversations without
+     * building it again
+     *
+     * @param generic Generic message
+     * @throws Exception
+     */
+    default void send(IGeneric generic) throws Exception {
+        try {
+            async(Runnable::run).send(generic).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
     /**
      * This method is invoked by the sdk. It sends delivery receipt when the message is received
      *
@@ -166,6 +193,56 @@ public interface WireClient extends Closeable {
      */
     byte[] downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey) throws Exception;
 
+    /**
+     * Streams the asset from the Backend decrypting it and checking its hash while it is read. The heap usage does
+     * not depend on the asset size. The default implementation downloads the whole asset with
+     * {@link #downloadAsset(String, String, byte[], byte[])} first, so implementations should override it.
+     *
+     * @param assetKey        Unique asset identifier (UUID)
+     * @param assetToken      Asset token (null in case of public assets)
+     * @param sha256Challenge SHA256 hash code for this asset
+     * @param otrKey          Encryption key to be used to decrypt the data
+     * @return Decrypted asset data. Reading past the end throws IOException if the hash does not match, in which case
+     * everything read from the stream must be discarded. Must be closed
+     * @throws Exception
+     */
+    default InputStream downloadAssetStream(String assetKey, String assetToken, byte[] sha256Challenge,
+                                            byte[] otrKey) throws Exception {
+        return new ByteArrayInputStream(downloadAsset(assetKey, assetToken, sha256Challenge, otrKey));
+    }
+
+    /**
+     * Downloads the asset into the output stream, decrypting it and checking its hash on the fly
+     *
+     * @param output Decrypted asset data. If this method throws, whatever has been written must be discarded
+     * @throws Exception
+     */
+    default void downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey,
+                               OutputStream output) throws Exception {
+        try (InputStream in = downloadAssetStream(assetKey, assetToken, sha256Challenge, otrKey)) {
+            Util.copy(in, output);
+        }
+    }
+
+    /**
+     * Downloads the asset into the file. The file is created (or replaced) only if the hash matches
+     *
+     * @param target Destination file
+     * @throws Exception
+     */
+    default void downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey,
+                               Path target) throws Exception {
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tmp)) {
+                downloadAsset(assetKey, assetToken, sha256Challenge, otrKey, output);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
     /**
      * @return Bot ID as UUID
      */
@@ -208,6 +285,14 @@ public interface WireClient extends Closeable {
      */
     void acceptConnection(String user) throws IOException;
 
+    /**
+     * Invoked by the sdk when users leave this conversation so that their devices are no longer encrypted for
+     *
+     * @param userIds User IDs (UUID) that left the conversation
+     */
+    default void onMemberLeave(Collection<String> userIds) {
+    }
+
     /**
      * Decrypt cipher either using existing session or it creates new session from this cipher and decrypts
      *
@@ -279,4 +364,15 @@ public interface WireClient extends Closeable {
      */
     AssetKey uploadAsset(IAsset asset) throws Exception;
 
+    /**
+     * Non-blocking view of this client. {@link #send(IGeneric)} is built on it, so implementations that predate it
+     * must override it (or send) to use either
+     *
+     * @param executor Executor that runs encryption/decryption. Backend calls are made asynchronously
+     * @return Async client that posts into this conversation
+     */
+    default AsyncWireClient async(Executor executor) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not implement async(Executor)");
+    }
+
 }
\ No newline at end of file
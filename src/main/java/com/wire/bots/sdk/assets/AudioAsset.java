@@ -20,16 +20,14 @@ package com.wire.bots.sdk.assets;
 
 import com.google.protobuf.ByteString;
 import com.waz.model.Messages;
-import com.wire.bots.sdk.Util;
 
-import java.security.MessageDigest;
 import java.security.SecureRandom;
 
 public class AudioAsset implements IGeneric, IAsset {
     static private final SecureRandom random = new SecureRandom();
 
     private final String messageId;
-    private final byte[] encBytes;
+    private final EncryptedAsset encrypted;
     private final byte[] otrKey = new byte[32];
     private final String mimeType;
     private String assetKey;
@@ -41,17 +39,14 @@ public class AudioAsset implements IGeneric, IAsset {
 
         random.nextBytes(otrKey);
 
-        byte[] iv = new byte[16];
-        random.nextBytes(iv);
-
-        encBytes = Util.encrypt(otrKey, bytes, iv);
+        encrypted = EncryptedAsset.encrypt(otrKey, bytes);
     }
 
     @Override
     public Messages.GenericMessage createGenericMsg() throws Exception {
         Messages.Asset.RemoteData.Builder remote = Messages.Asset.RemoteData.newBuilder()
                 .setOtrKey(ByteString.copyFrom(otrKey))
-                .setSha256(ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(getEncryptedData())))
+                .setSha256(ByteString.copyFrom(encrypted.getSha256()))
                 .setAssetId(assetKey);
 
         // Only set token on private assets
@@ -89,7 +84,12 @@ public class AudioAsset implements IGeneric, IAsset {
 
     @Override
     public byte[] getEncryptedData() {
-        return encBytes;
+        return encrypted.getData();
+    }
+
+    @Override
+    public String getEncryptedMd5() {
+        return encrypted.getMd5();
     }
 
     @Override
@@ -21,18 +21,16 @@ package com.wire.bots.sdk.assets;
 import com.google.protobuf.ByteString;
 import com.waz.model.Messages;
 import com.wire.bots.sdk.Logger;
-import com.wire.bots.sdk.Util;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.UUID;
 
 public class AudioPreview implements IGeneric {
+    private static final int LEVELS = 100;
+
     private final String name;
     private final String mimeType;
     private final String messageId;
@@ -90,40 +88,10 @@ public class AudioPreview implements IGeneric {
 
     private static byte[] getNormalizedLoudness(InputStream stream) {
         try (AudioInputStream in = AudioSystem.getAudioInputStream(stream)) {
-            ArrayList<Double> vals = new ArrayList<>(100);
-
-            byte[] buffer = Util.toByteArray(in);
-            ByteBuffer bb = ByteBuffer.wrap(buffer);
-            bb.order(ByteOrder.LITTLE_ENDIAN);
-
-            double max = 0;
-            long sum = 0;
-            int step = buffer.length / 100;
-            for (int i = 0; i < buffer.length - 1; i += 2) {
-                short sample = bb.getShort(i);
-                sum += sample * sample;
-                if (i % step == 0) {
-                    double avg = Math.sqrt(sum / step);
-                    sum = 0;
-                    if (avg > max)
-                        max = avg;
-                    vals.add(avg);
-                }
-            }
-
-            byte[] ret = new byte[vals.size()];
-            final double d = 255 / max;
-            for (int i = 0; i < vals.size(); i++) {
-                long round = Math.round(vals.get(i) * d);
-                byte b = (byte) round;
-                ret[i] = b;
-            }
-
-            return ret;
+            return LoudnessAnalyzer.analyze(in, LEVELS);
         } catch (Exception e) {
             Logger.warning(e.getMessage());
             return new byte[0];
         }
     }
-
 }
@@ -0,0 +1,152 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.assets;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypted asset (IV + AES/CBC cipher) together with the SHA-256 and the MD5 of it. Everything is produced in a
+ * single pass: each chunk is hashed right after it has been encrypted into the output, while it is still in cache.
+ * Cipher and digests are reused per thread.
+ */
+public class EncryptedAsset {
+    private static final int CHUNK = 64 * 1024;
+    private static final SecureRandom random = new SecureRandom();
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/CBC/PKCS5Padding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> sha256Digests = ThreadLocal.withInitial(() -> digest("SHA-256"));
+    private static final ThreadLocal<MessageDigest> md5Digests = ThreadLocal.withInitial(() -> digest("MD5"));
+
+    private final byte[] data;
+    private final byte[] sha256;
+    private final String md5;
+
+    private EncryptedAsset(byte[] data, byte[] sha256, String md5) {
+        this.data = data;
+        this.sha256 = sha256;
+        this.md5 = md5;
+    }
+
+    /**
+     * Encrypts with a random IV
+     *
+     * @param otrKey AES key
+     * @param plain  Asset data
+     */
+    public static EncryptedAsset encrypt(byte[] otrKey, byte[] plain) throws GeneralSecurityException {
+        return encrypt(otrKey, plain, newIv());
+    }
+
+    public static EncryptedAsset encrypt(byte[] otrKey, byte[] plain, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = cipher(otrKey, iv);
+        MessageDigest sha256 = sha256();
+        MessageDigest md5 = md5();
+
+        byte[] out = new byte[iv.length + cipher.getOutputSize(plain.length)];
+        System.arraycopy(iv, 0, out, 0, iv.length);
+        sha256.update(iv);
+        md5.update(iv);
+
+        int pos = iv.length;
+        for (int off = 0; off < plain.length; off += CHUNK) {
+            int n = cipher.update(plain, off, Math.min(CHUNK, plain.length - off), out, pos);
+            sha256.update(out, pos, n);
+            md5.update(out, pos, n);
+            pos += n;
+        }
+        int n = cipher.doFinal(out, pos);
+        sha256.update(out, pos, n);
+        md5.update(out, pos, n);
+        pos += n;
+
+        if (pos != out.length)
+            throw new IllegalStateException("Unexpected cipher length: " + pos + ", expected: " + out.length);
+
+        return new EncryptedAsset(out, sha256.digest(), Base64.getEncoder().encodeToString(md5.digest()));
+    }
+
+    /**
+     * @return IV + cipher
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return SHA-256 of the encrypted data
+     */
+    public byte[] getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return Base64 encoded MD5 of the encrypted data
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    static byte[] newIv() {
+        byte[] iv = new byte[16];
+        random.nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * @return This thread's cipher initialized for encryption
+     */
+    static Cipher cipher(byte[] otrKey, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(otrKey, "AES"), new IvParameterSpec(iv));
+        return cipher;
+    }
+
+    static MessageDigest sha256() {
+        MessageDigest digest = sha256Digests.get();
+        digest.reset();
+        return digest;
+    }
+
+    static MessageDigest md5() {
+        MessageDigest digest = md5Digests.get();
+        digest.reset();
+        return digest;
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
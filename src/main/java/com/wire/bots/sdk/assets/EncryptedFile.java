@@ -0,0 +1,156 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.assets;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Encrypted file that is never held in memory. The file is encrypted once to learn the length, the SHA-256 and the
+ * MD5 of the cipher (the upload needs them before the body), and once more with the same key and IV while it is
+ * written to the upload stream. Both passes read the file through a FileChannel in 64KB chunks.
+ */
+public class EncryptedFile {
+    private static final int CHUNK = 64 * 1024;
+
+    private final File file;
+    private final byte[] otrKey;
+    private final byte[] iv;
+    private final long size;
+    private final byte[] sha256;
+    private final String md5;
+
+    private EncryptedFile(File file, byte[] otrKey, byte[] iv, long size, byte[] sha256, String md5) {
+        this.file = file;
+        this.otrKey = otrKey;
+        this.iv = iv;
+        this.size = size;
+        this.sha256 = sha256;
+        this.md5 = md5;
+    }
+
+    /**
+     * Encrypts the file with a random IV, keeping only the length and the digests of the cipher
+     *
+     * @param file   Plain file
+     * @param otrKey AES key
+     */
+    public static EncryptedFile encrypt(File file, byte[] otrKey) throws IOException, GeneralSecurityException {
+        byte[] iv = EncryptedAsset.newIv();
+        MessageDigest sha256 = EncryptedAsset.sha256();
+        MessageDigest md5 = EncryptedAsset.md5();
+
+        long size = encrypt(file, otrKey, iv, (buf, off, len) -> {
+            sha256.update(buf, off, len);
+            md5.update(buf, off, len);
+        });
+        return new EncryptedFile(file, otrKey, iv, size, sha256.digest(), Base64.getEncoder().encodeToString(md5.digest()));
+    }
+
+    /**
+     * Encrypts the file again into the output
+     *
+     * @param output Upload stream
+     * @throws IOException if the file cannot be read or it has changed since it was first encrypted
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        MessageDigest digest = EncryptedAsset.sha256();
+        try {
+            encrypt(file, otrKey, iv, (buf, off, len) -> {
+                output.write(buf, off, len);
+                digest.update(buf, off, len);
+            });
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        if (!Arrays.equals(digest.digest(), sha256))
+            throw new IOException("File changed while uploading: " + file.getAbsolutePath());
+    }
+
+    /**
+     * @return IV + cipher in one array. Only for files below 2GB
+     */
+    public byte[] getData() throws IOException {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IOException("File too large to be held in memory: " + file.getAbsolutePath());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream((int) size);
+        writeTo(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * @return Length of IV + cipher
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return SHA-256 of the encrypted data
+     */
+    public byte[] getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return Base64 encoded MD5 of the encrypted data
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    private static long encrypt(File file, byte[] otrKey, byte[] iv, Sink sink)
+            throws IOException, GeneralSecurityException {
+        Cipher cipher = EncryptedAsset.cipher(otrKey, iv);
+        ByteBuffer in = ByteBuffer.allocate(CHUNK);
+        byte[] out = new byte[cipher.getOutputSize(CHUNK)];
+
+        sink.write(iv, 0, iv.length);
+        long total = iv.length;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(in) != -1) {
+                int n = cipher.update(in.array(), 0, in.position(), out, 0);
+                sink.write(out, 0, n);
+                total += n;
+                in.clear();
+            }
+        }
+        int n = cipher.doFinal(out, 0);
+        sink.write(out, 0, n);
+        return total + n;
+    }
+
+    private interface Sink {
+        void write(byte[] buf, int off, int len) throws IOException;
+    }
+}
@@ -20,11 +20,11 @@ package com.wire.bots.sdk.assets;
 
 import com.google.protobuf.ByteString;
 import com.waz.model.Messages;
-import com.wire.bots.sdk.Util;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.security.MessageDigest;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.util.UUID;
 
@@ -35,42 +35,31 @@ public class FileAsset implements IGeneric, IAsset {
     private final String id;
     private final String name;
     private final String mimeType;
-    private final int size;
-    private final byte[] encBytes;
-    private final byte[] key = new byte[32];
+    private final File file;
+    private final long size;
+    private byte[] key;
+    private byte[] sha256;
+    private EncryptedFile encrypted;
     private String assetKey = null;
     private String assetToken;
 
     public FileAsset(FileAssetPreview preview) throws Exception {
-        this.id = preview.getId();
-        this.name = preview.getName();
-        this.mimeType = preview.getMimeType();
-        random.nextBytes(key);
-
-        byte[] iv = new byte[16];
-        random.nextBytes(iv);
-
-        try (FileInputStream input = new FileInputStream(preview.getFile())) {
-            byte[] bytes = Util.toByteArray(input);
-            size = bytes.length;
-            encBytes = Util.encrypt(key, bytes, iv);
-        }
+        this(preview.getId(), preview.getFile(), preview.getName(), preview.getMimeType());
     }
 
     public FileAsset(File file, String mimeType) throws Exception {
-        this.id = UUID.randomUUID().toString();
-        this.name = file.getName();
-        this.mimeType = mimeType;
-        random.nextBytes(key);
+        this(UUID.randomUUID().toString(), file, file.getName(), mimeType);
+    }
 
-        byte[] iv = new byte[16];
-        random.nextBytes(iv);
+    private FileAsset(String id, File file, String name, String mimeType) throws FileNotFoundException {
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getAbsolutePath());
 
-        try (FileInputStream input = new FileInputStream(file)) {
-            byte[] bytes = Util.toByteArray(input);
-            size = bytes.length;
-            encBytes = Util.encrypt(key, bytes, iv);
-        }
+        this.id = id;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.file = file;
+        this.size = file.length();
     }
 
     @Override
@@ -84,8 +73,8 @@ public class FileAsset implements IGeneric, IAsset {
 
         // Remote
         Messages.Asset.RemoteData.Builder remote = Messages.Asset.RemoteData.newBuilder()
-                .setOtrKey(ByteString.copyFrom(key))
-                .setSha256(ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(getEncryptedData())))
+                .setOtrKey(ByteString.copyFrom(getOtrKey()))
+                .setSha256(ByteString.copyFrom(getSha256()))
                 .setAssetId(assetKey);
 
         // Only set token on private assets
@@ -111,6 +100,33 @@ public class FileAsset implements IGeneric, IAsset {
         this.assetToken = assetToken;
     }
 
+    /**
+     * Set together with the sha256 when the asset has been uploaded already. The file is not encrypted then
+     */
+    public synchronized void setOtrKey(byte[] otrKey) {
+        this.key = otrKey;
+    }
+
+    public synchronized byte[] getOtrKey() {
+        if (key == null) {
+            key = new byte[32];
+            random.nextBytes(key);
+        }
+        return key;
+    }
+
+    public synchronized void setSha256(byte[] sha256) {
+        this.sha256 = sha256;
+    }
+
+    public synchronized byte[] getSha256() {
+        return sha256 != null ? sha256 : encrypted().getSha256();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
     @Override
     public String getMimeType() {
         return mimeType;
@@ -123,11 +139,44 @@ public class FileAsset implements IGeneric, IAsset {
 
     @Override
     public byte[] getEncryptedData() {
-        return encBytes;
+        try {
+            return encrypted().getData();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long getEncryptedSize() {
+        return encrypted().getSize();
+    }
+
+    @Override
+    public void writeEncryptedData(OutputStream output) throws IOException {
+        encrypted().writeTo(output);
+    }
+
+    @Override
+    public String getEncryptedMd5() {
+        return encrypted().getMd5();
     }
 
     @Override
     public boolean isPublic() {
         return false;
     }
+
+    /**
+     * Encrypts the file on first use to learn the digests. The cipher itself is produced again while uploading
+     */
+    private synchronized EncryptedFile encrypted() {
+        if (encrypted == null) {
+            try {
+                encrypted = EncryptedFile.encrypt(file, getOtrKey());
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to encrypt: " + file.getAbsolutePath(), e);
+            }
+        }
+        return encrypted;
+    }
 }
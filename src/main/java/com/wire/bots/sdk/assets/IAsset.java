@@ -18,6 +18,12 @@
 
 package com.wire.bots.sdk.assets;
 
+import com.wire.bots.sdk.Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+
 public interface IAsset {
     String getMimeType();
 
@@ -26,4 +32,27 @@ public interface IAsset {
     byte[] getEncryptedData();
 
     boolean isPublic();
+
+    /**
+     * @return Length of the encrypted data
+     */
+    default long getEncryptedSize() {
+        return getEncryptedData().length;
+    }
+
+    /**
+     * @return Base64 encoded MD5 of the encrypted data
+     */
+    default String getEncryptedMd5() throws NoSuchAlgorithmException {
+        return Util.calcMd5(getEncryptedData());
+    }
+
+    /**
+     * Writes the encrypted data. Assets that are not held in memory should stream them from their source
+     *
+     * @param output Upload stream
+     */
+    default void writeEncryptedData(OutputStream output) throws IOException {
+        output.write(getEncryptedData());
+    }
 }
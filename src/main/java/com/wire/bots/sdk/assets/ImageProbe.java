@@ -0,0 +1,147 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.assets;
+
+import java.awt.Dimension;
+
+/**
+ * Reads the dimensions of JPEG, PNG, GIF and WebP images from their headers, without decoding the pixels
+ */
+public final class ImageProbe {
+    private ImageProbe() {
+    }
+
+    /**
+     * @param data Image
+     * @return Width and height or null if the format is not recognized or the header is broken
+     */
+    public static Dimension dimensions(byte[] data) {
+        if (data == null)
+            return null;
+        if (startsWith(data, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A))
+            return png(data);
+        if (startsWith(data, 0, 'G', 'I', 'F', '8'))
+            return gif(data);
+        if (startsWith(data, 0, 0xFF, 0xD8))
+            return jpeg(data);
+        if (startsWith(data, 0, 'R', 'I', 'F', 'F') && startsWith(data, 8, 'W', 'E', 'B', 'P'))
+            return webp(data);
+        return null;
+    }
+
+    private static Dimension png(byte[] data) {
+        // IHDR is always the first chunk
+        if (!startsWith(data, 12, 'I', 'H', 'D', 'R') || data.length < 24)
+            return null;
+        return valid(int32(data, 16), int32(data, 20));
+    }
+
+    private static Dimension gif(byte[] data) {
+        // logical screen descriptor
+        if (data.length < 10)
+            return null;
+        return valid(uint16le(data, 6), uint16le(data, 8));
+    }
+
+    private static Dimension jpeg(byte[] data) {
+        int i = 2;
+        while (i + 1 < data.length) {
+            if ((data[i] & 0xFF) != 0xFF)
+                return null;
+
+            int marker = data[i + 1] & 0xFF;
+            if (marker == 0xFF) {       // fill byte
+                i++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {     // no payload
+                i += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA)       // end of image, start of scan: no frame header
+                return null;
+
+            if (i + 4 > data.length)
+                return null;
+            int length = uint16be(data, i + 2);
+
+            // SOF0..SOF15 except DHT, JPG and DAC
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                if (i + 9 > data.length)
+                    return null;
+                return valid(uint16be(data, i + 7), uint16be(data, i + 5));
+            }
+            i += 2 + length;
+        }
+        return null;
+    }
+
+    private static Dimension webp(byte[] data) {
+        if (data.length < 30)
+            return null;
+
+        // lossy: key frame header after the start code
+        if (startsWith(data, 12, 'V', 'P', '8', ' ') && startsWith(data, 23, 0x9D, 0x01, 0x2A))
+            return valid(uint16le(data, 26) & 0x3FFF, uint16le(data, 28) & 0x3FFF);
+
+        // lossless: 14 bits width - 1, 14 bits height - 1
+        if (startsWith(data, 12, 'V', 'P', '8', 'L') && (data[20] & 0xFF) == 0x2F) {
+            int bits = (data[21] & 0xFF) | (data[22] & 0xFF) << 8 | (data[23] & 0xFF) << 16 | (data[24] & 0xFF) << 24;
+            return valid((bits & 0x3FFF) + 1, (bits >>> 14 & 0x3FFF) + 1);
+        }
+
+        // extended: 24 bits canvas width - 1 and height - 1
+        if (startsWith(data, 12, 'V', 'P', '8', 'X'))
+            return valid(uint24le(data, 24) + 1, uint24le(data, 27) + 1);
+
+        return null;
+    }
+
+    private static Dimension valid(int width, int height) {
+        return width > 0 && height > 0 ? new Dimension(width, height) : null;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... prefix) {
+        if (data.length < offset + prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((data[offset + i] & 0xFF) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int int32(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8
+                | (data[offset + 3] & 0xFF);
+    }
+
+    private static int uint16be(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private static int uint16le(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int uint24le(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16;
+    }
+}
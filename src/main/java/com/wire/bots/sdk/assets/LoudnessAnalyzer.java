@@ -0,0 +1,211 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.assets;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+
+/**
+ * Computes the normalized loudness (RMS per bucket, scaled to 0..255) of an audio stream in one pass. Memory does not
+ * depend on the length of the clip: the stream is read in fixed windows and the levels are accumulated into at most
+ * twice the requested number of buckets. When the length of the stream is not known the buckets double in size
+ * whenever they run out.
+ */
+public final class LoudnessAnalyzer {
+    private static final int WINDOW_FRAMES = 4096;
+
+    private final int levels;
+    private final double[] sums;
+    private final long[] counts;
+    private long framesPerBucket;
+    private long framesInBucket;
+    private int bucket;
+
+    private LoudnessAnalyzer(int levels, long frameLength) {
+        this.levels = levels;
+        this.sums = new double[2 * levels];
+        this.counts = new long[2 * levels];
+        this.framesPerBucket = frameLength > 0 ? Math.max(1, (frameLength + levels - 1) / levels) : 1;
+    }
+
+    /**
+     * @param in     Audio stream. Any PCM format, other encodings are converted to PCM if the system supports it
+     * @param levels Number of levels to return
+     * @return Loudness levels, one unsigned byte each. Fewer than requested if the clip is shorter than that
+     * @throws IOException if the stream cannot be read or converted to PCM
+     */
+    public static byte[] analyze(AudioInputStream in, int levels) throws IOException {
+        AudioInputStream pcm = toPcm(in);
+        AudioFormat format = pcm.getFormat();
+
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(levels, pcm.getFrameLength());
+        SampleReader reader = new SampleReader(format);
+
+        int frameSize = format.getFrameSize();
+        byte[] window = new byte[frameSize * WINDOW_FRAMES];
+        int filled = 0;
+        int n;
+        while ((n = pcm.read(window, filled, window.length - filled)) != -1) {
+            filled += n;
+            int frames = filled / frameSize;
+            for (int f = 0; f < frames; f++)
+                analyzer.add(reader.meanSquare(window, f * frameSize));
+
+            // keep the partial frame for the next read
+            int used = frames * frameSize;
+            System.arraycopy(window, used, window, 0, filled - used);
+            filled -= used;
+        }
+        return analyzer.result();
+    }
+
+    private static AudioInputStream toPcm(AudioInputStream in) throws IOException {
+        AudioFormat format = in.getFormat();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) ||
+                encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED) ||
+                encoding.equals(AudioFormat.Encoding.PCM_FLOAT))
+            return in;
+
+        AudioFormat target = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                format.getSampleRate(),
+                16,
+                format.getChannels(),
+                2 * format.getChannels(),
+                format.getSampleRate(),
+                false);
+        try {
+            return AudioSystem.getAudioInputStream(target, in);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported audio encoding: " + encoding, e);
+        }
+    }
+
+    private void add(double meanSquare) {
+        if (framesInBucket == framesPerBucket) {
+            bucket++;
+            framesInBucket = 0;
+            if (bucket == sums.length)
+                merge();
+        }
+        sums[bucket] += meanSquare;
+        counts[bucket]++;
+        framesInBucket++;
+    }
+
+    /**
+     * Merges adjacent buckets so that they cover twice as many frames
+     */
+    private void merge() {
+        int half = sums.length / 2;
+        for (int i = 0; i < half; i++) {
+            sums[i] = sums[2 * i] + sums[2 * i + 1];
+            counts[i] = counts[2 * i] + counts[2 * i + 1];
+        }
+        for (int i = half; i < sums.length; i++) {
+            sums[i] = 0;
+            counts[i] = 0;
+        }
+        bucket = half;
+        framesPerBucket *= 2;
+    }
+
+    private byte[] result() {
+        int used = counts[bucket] > 0 ? bucket + 1 : bucket;
+        int size = Math.min(levels, used);
+
+        double[] rms = new double[size];
+        double max = 0;
+        for (int j = 0; j < size; j++) {
+            // spread the used buckets evenly over the levels
+            int from = (int) ((long) j * used / size);
+            int to = (int) ((long) (j + 1) * used / size);
+            double sum = 0;
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                sum += sums[i];
+                count += counts[i];
+            }
+            rms[j] = count > 0 ? Math.sqrt(sum / count) : 0;
+            max = Math.max(max, rms[j]);
+        }
+
+        byte[] ret = new byte[size];
+        if (max > 0) {
+            for (int j = 0; j < size; j++)
+                ret[j] = (byte) Math.round(rms[j] * 255 / max);
+        }
+        return ret;
+    }
+
+    /**
+     * Decodes one frame into the mean of the squared samples of its channels, samples scaled to -1..1
+     */
+    private static class SampleReader {
+        private final int channels;
+        private final int bytesPerSample;
+        private final boolean bigEndian;
+        private final boolean unsigned;
+        private final boolean floating;
+        private final double scale;
+
+        SampleReader(AudioFormat format) throws IOException {
+            this.channels = format.getChannels();
+            this.bytesPerSample = (format.getSampleSizeInBits() + 7) / 8;
+            this.bigEndian = format.isBigEndian();
+            this.unsigned = format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED);
+            this.floating = format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT);
+            this.scale = 1.0 / (1L << (8 * bytesPerSample - 1));
+
+            if (channels < 1 || bytesPerSample < 1 || bytesPerSample > 4 || format.getFrameSize() < channels * bytesPerSample)
+                throw new IOException("Unsupported audio format: " + format);
+            if (floating && bytesPerSample != 4)
+                throw new IOException("Unsupported audio format: " + format);
+        }
+
+        double meanSquare(byte[] data, int offset) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                double sample = sample(data, offset + c * bytesPerSample);
+                sum += sample * sample;
+            }
+            return sum / channels;
+        }
+
+        private double sample(byte[] data, int offset) {
+            long bits = 0;
+            for (int i = 0; i < bytesPerSample; i++) {
+                int b = data[offset + (bigEndian ? i : bytesPerSample - 1 - i)] & 0xFF;
+                bits = bits << 8 | b;
+            }
+
+            if (floating)
+                return Float.intBitsToFloat((int) bits);
+
+            int shift = 64 - 8 * bytesPerSample;
+            long value = unsigned
+                    ? bits - (1L << (8 * bytesPerSample - 1))
+                    : bits << shift >> shift;     // sign extend
+            return value * scale;
+        }
+    }
+}
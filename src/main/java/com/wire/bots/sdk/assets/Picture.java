@@ -23,14 +23,17 @@ import com.waz.model.Messages;
 import com.wire.bots.sdk.Util;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Iterator;
 import java.util.UUID;
 
 public class Picture implements IGeneric, IAsset {
@@ -42,7 +45,7 @@ public class Picture implements IGeneric, IAsset {
     private int height;
     private int size;
     private byte[] otrKey;
-    private byte[] encBytes = null;
+    private EncryptedAsset encrypted;
     private byte[] sha256;
     private String assetKey;
     private String assetToken;
@@ -127,16 +130,14 @@ public class Picture implements IGeneric, IAsset {
 
     @Override
     public byte[] getEncryptedData() {
-        if (encBytes == null) {
-            try {
-                byte[] iv = new byte[16];
-                random.nextBytes(iv);
-                encBytes = Util.encrypt(getOtrKey(), imageData, iv);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        return encBytes;
+        EncryptedAsset enc = encrypted();
+        return enc != null ? enc.getData() : null;
+    }
+
+    @Override
+    public String getEncryptedMd5() {
+        EncryptedAsset enc = encrypted();
+        return enc != null ? enc.getMd5() : null;
     }
 
     @Override
@@ -182,7 +183,9 @@ public class Picture implements IGeneric, IAsset {
 
     public byte[] getSha256() throws NoSuchAlgorithmException {
         if (sha256 == null) {
-            sha256 = MessageDigest.getInstance("SHA-256").digest(encBytes);
+            EncryptedAsset enc = encrypted();
+            if (enc != null)
+                sha256 = enc.getSha256();
         }
         return sha256;
     }
@@ -239,12 +242,52 @@ public class Picture implements IGeneric, IAsset {
         return expires;
     }
 
+    private synchronized EncryptedAsset encrypted() {
+        if (encrypted == null) {
+            try {
+                encrypted = EncryptedAsset.encrypt(getOtrKey(), imageData);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return encrypted;
+    }
+
+    /**
+     * Reads width and height from the image header. Decodes the whole image only if the format is not recognized
+     */
     private void loadBufferImage() throws IOException {
+        size = imageData.length;
+
+        Dimension dimension = ImageProbe.dimensions(imageData);
+        if (dimension == null)
+            dimension = readDimensions();
+
+        width = dimension.width;
+        height = dimension.height;
+    }
+
+    private Dimension readDimensions() throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    return new Dimension(reader.getWidth(0), reader.getHeight(0));
+                } catch (IOException e) {
+                    // header is not readable, try the full decode
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
         try (InputStream input = new ByteArrayInputStream(imageData)) {
             BufferedImage bufferedImage = ImageIO.read(input);
-            width = bufferedImage.getWidth();
-            height = bufferedImage.getHeight();
-            size = imageData.length;
+            if (bufferedImage == null)
+                throw new IOException("Unsupported image format: " + mimeType);
+            return new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
         }
     }
 }
@@ -0,0 +1,72 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.assets;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.waz.model.Messages;
+
+import java.util.Arrays;
+
+/**
+ * Immutable message that is built and serialized once and can be sent to any number of conversations, e.g. for
+ * broadcasts. Only the encryption for the devices runs per conversation. The message id is the same in every
+ * conversation, which is fine as message ids are unique per conversation only.
+ */
+public final class PreparedMessage implements IGeneric {
+    private final Messages.GenericMessage message;
+    private final byte[] payload;
+
+    /**
+     * @param generic Message to prepare. It is built right away
+     */
+    public PreparedMessage(IGeneric generic) throws Exception {
+        this.message = generic.createGenericMsg();
+        this.payload = message.toByteArray();
+    }
+
+    /**
+     * @param payload Serialized GenericMessage. It is copied
+     */
+    public PreparedMessage(byte[] payload) throws InvalidProtocolBufferException {
+        this.payload = Arrays.copyOf(payload, payload.length);
+        this.message = Messages.GenericMessage.parseFrom(this.payload);
+    }
+
+    /**
+     * Serialized message as sent over the wire. The serialized form of prepared messages is shared
+     *
+     * @param generic Any message
+     * @return Serialized GenericMessage. Must not be modified
+     */
+    public static byte[] payload(IGeneric generic) throws Exception {
+        if (generic instanceof PreparedMessage)
+            return ((PreparedMessage) generic).payload;
+        return generic.createGenericMsg().toByteArray();
+    }
+
+    @Override
+    public Messages.GenericMessage createGenericMsg() {
+        return message;
+    }
+
+    public String getMessageId() {
+        return message.getMessageId();
+    }
+}
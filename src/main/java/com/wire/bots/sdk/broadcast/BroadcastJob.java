@@ -0,0 +1,340 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.broadcast;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wire.bots.sdk.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One broadcast and its progress, persisted in its own directory:
+ * <ul>
+ * <li>job.json - the message and the number of targets</li>
+ * <li>targets - snapshot of the bot ids taken when the job was created, one per line</li>
+ * <li>checkpoint.json - index below which all the targets are done, the done ones above it and the counters</li>
+ * <li>failed - bot id and error of every failed target</li>
+ * </ul>
+ * Targets are sent in order with a bounded number in flight, so the done targets above the watermark are few. A job
+ * that was interrupted resumes from its last checkpoint; only the targets completed after it are sent again. They
+ * carry the same message id so clients drop the duplicates.
+ * <p>
+ * A job that is not dispatched by this process (it was interrupted by a stop, or it is read back while the service
+ * does not run it) reports {@link State#SUSPENDED}. It is still RUNNING on disk and is resumed on the next start.
+ */
+public class BroadcastJob {
+    static final String JOB = "job.json";
+    static final String TARGETS = "targets";
+    static final String CHECKPOINT = "checkpoint.json";
+    static final String FAILED = "failed";
+    private static final String TMP = ".tmp";
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public enum State {
+        RUNNING, SUSPENDED, DONE, CANCELLED, FAILED
+    }
+
+    private final Path dir;
+    private final Spec spec;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final TreeSet<Long> done = new TreeSet<>();  // guarded by this
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final long resumedAt = System.currentTimeMillis();
+    private final long completedBefore;
+    private long watermark;                              // guarded by this
+    private BufferedWriter failures;                     // guarded by this
+    private volatile State state = State.RUNNING;
+
+    private BroadcastJob(Path dir, Spec spec, Checkpoint checkpoint) {
+        this.dir = dir;
+        this.spec = spec;
+        if (checkpoint != null) {
+            this.watermark = checkpoint.watermark;
+            this.done.addAll(checkpoint.done);
+            this.sent.set(checkpoint.sent);
+            this.failed.set(checkpoint.failed);
+            this.state = checkpoint.state;
+        }
+        this.completedBefore = sent.get() + failed.get();
+        if (state != State.RUNNING)
+            finished.countDown();
+    }
+
+    /**
+     * Creates the job directory and writes the snapshot of the targets
+     *
+     * @param dir     Job directory. Must not exist yet
+     * @param text    Text to broadcast
+     * @param targets Bot ids
+     */
+    static BroadcastJob create(Path dir, String text, Collection<String> targets) throws IOException {
+        Path tmp = dir.resolveSibling(dir.getFileName() + TMP);
+        Files.createDirectories(tmp);
+
+        Spec spec = new Spec();
+        spec.id = dir.getFileName().toString();
+        spec.text = text;
+        spec.messageId = UUID.randomUUID().toString();
+        spec.created = System.currentTimeMillis();
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.resolve(TARGETS), StandardCharsets.UTF_8)) {
+            for (String botId : targets) {
+                writer.write(botId);
+                writer.newLine();
+                spec.total++;
+            }
+        }
+        mapper.writeValue(tmp.resolve(JOB).toFile(), spec);
+        Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+
+        return new BroadcastJob(dir, spec, null);
+    }
+
+    /**
+     * Loads the job and its last checkpoint
+     *
+     * @param dir Job directory
+     */
+    static BroadcastJob load(Path dir) throws IOException {
+        Spec spec = mapper.readValue(dir.resolve(JOB).toFile(), Spec.class);
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        return new BroadcastJob(dir, spec, Files.exists(checkpoint)
+                ? mapper.readValue(checkpoint.toFile(), Checkpoint.class)
+                : null);
+    }
+
+    /**
+     * @return Reader of the bot ids. The n-th line is the target with index n
+     */
+    BufferedReader openTargets() throws IOException {
+        return Files.newBufferedReader(dir.resolve(TARGETS), StandardCharsets.UTF_8);
+    }
+
+    synchronized boolean isDone(long index) {
+        return index < watermark || done.contains(index);
+    }
+
+    synchronized void succeeded(long index) {
+        sent.incrementAndGet();
+        complete(index);
+    }
+
+    synchronized void failed(long index, String botId, String error) {
+        failed.incrementAndGet();
+        complete(index);
+        try {
+            if (failures == null)
+                failures = Files.newBufferedWriter(dir.resolve(FAILED), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            failures.write(botId);
+            failures.write(' ');
+            failures.write(String.valueOf(error));
+            failures.newLine();
+        } catch (IOException e) {
+            Logger.warning("Broadcast %s: failed to record failure of %s: %s", getId(), botId, e);
+        }
+    }
+
+    private void complete(long index) {
+        if (index < watermark)
+            return;
+        done.add(index);
+        while (done.remove(watermark))
+            watermark++;
+    }
+
+    /**
+     * Writes the progress atomically. Failures recorded so far are flushed first
+     */
+    synchronized void checkpoint() throws IOException {
+        if (failures != null)
+            failures.flush();
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.watermark = watermark;
+        checkpoint.done = new ArrayList<>(done);
+        checkpoint.sent = sent.get();
+        checkpoint.failed = failed.get();
+        // suspended jobs are resumed on the next start
+        checkpoint.state = state == State.SUSPENDED ? State.RUNNING : state;
+
+        Path tmp = dir.resolve(CHECKPOINT + TMP);
+        mapper.writeValue(tmp.toFile(), checkpoint);
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the checkpoint and releases the failures file. The job is resumed on the next start
+     */
+    synchronized void suspend() throws IOException {
+        try {
+            checkpoint();
+            closeFailures();
+        } finally {
+            suspended();
+        }
+    }
+
+    /**
+     * Marks a job that is not dispatched by this process as suspended, so waiting for it returns
+     */
+    synchronized void suspended() {
+        if (state == State.RUNNING)
+            state = State.SUSPENDED;
+        finished.countDown();
+    }
+
+    /**
+     * Marks the job as finished and writes the final checkpoint
+     *
+     * @param state DONE, CANCELLED or FAILED
+     */
+    synchronized void finish(State state) throws IOException {
+        this.state = state;
+        try {
+            checkpoint();
+            closeFailures();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void closeFailures() throws IOException {
+        if (failures != null) {
+            failures.close();
+            failures = null;
+        }
+    }
+
+    /**
+     * Stops dispatching. Messages in flight are still completed. A suspended job is not resumed any more
+     */
+    public synchronized void cancel() throws IOException {
+        if (state == State.RUNNING) {
+            state = State.CANCELLED;
+        } else if (state == State.SUSPENDED) {
+            state = State.CANCELLED;
+            checkpoint();
+        }
+    }
+
+    /**
+     * @return True once the job is finished and the final checkpoint is written, or once it is suspended
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public String getId() {
+        return spec.id;
+    }
+
+    public String getText() {
+        return spec.text;
+    }
+
+    public String getMessageId() {
+        return spec.messageId;
+    }
+
+    public long getTotal() {
+        return spec.total;
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Messages per second since the job was started or resumed
+     */
+    public double getRate() {
+        long elapsed = System.currentTimeMillis() - resumedAt;
+        long completed = sent.get() + failed.get() - completedBefore;
+        return elapsed > 0 ? completed * 1000.0 / elapsed : 0;
+    }
+
+    /**
+     * @return Estimated seconds until all the targets are done or -1 if not known yet
+     */
+    public long getEtaSeconds() {
+        double rate = getRate();
+        if (rate <= 0)
+            return -1;
+        long left = spec.total - sent.get() - failed.get();
+        return (long) Math.ceil(Math.max(0, left) / rate);
+    }
+
+    @Override
+    public String toString() {
+        long eta = getEtaSeconds();
+        return String.format("Broadcast %s: %s, sent: %,d, failed: %,d, total: %,d, rate: %.1f/s, eta: %s",
+                getId(),
+                state,
+                sent.get(),
+                failed.get(),
+                spec.total,
+                getRate(),
+                eta < 0 ? "-" : String.format("%dh%02dm%02ds", eta / 3600, eta / 60 % 60, eta % 60));
+    }
+
+    public static class Spec {
+        public String id;
+        public String text;
+        public String messageId;
+        public long created;
+        public long total;
+    }
+
+    public static class Checkpoint {
+        public long watermark;
+        public ArrayList<Long> done = new ArrayList<>();
+        public long sent;
+        public long failed;
+        public State state = State.RUNNING;
+    }
+}
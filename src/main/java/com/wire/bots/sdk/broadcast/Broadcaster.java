@@ -0,0 +1,325 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.broadcast;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.wire.bots.sdk.ClientRepo;
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.Logger;
+import com.wire.bots.sdk.assets.IGeneric;
+import com.wire.bots.sdk.assets.PreparedMessage;
+import com.wire.bots.sdk.assets.Text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sends a text to all the bots. Jobs are persisted under [cryptoDir]/.broadcasts and checkpointed periodically, so a
+ * broadcast interrupted by a restart resumes where it stopped (see {@link BroadcastJob}).
+ * <p>
+ * Each running job has a dispatcher thread that streams the targets from disk and hands them to the shared worker
+ * pool, with a bounded number of messages in flight. Sends are limited by a global token bucket and by one per bot;
+ * a bot that is over its limit (because of another broadcast) is retried later instead of blocking a worker.
+ * The message is built once per job and the same instance is encrypted for every conversation.
+ */
+public class Broadcaster {
+    private static final String JOBS = ".broadcasts";
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Broadcaster-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ClientRepo repo;
+    private final Configuration.Broadcast conf;
+    private final Path jobs;
+    private final Executor workers;
+    private final RateLimiter global;
+    private final Cache<String, RateLimiter> bots;
+    private final ConcurrentHashMap<String, BroadcastJob> running = new ConcurrentHashMap<>();
+    private final Meter sent = new Meter();
+    private final Meter failed = new Meter();
+    private volatile boolean stopping;
+
+    /**
+     * @param repo      Clients of the bots
+     * @param cryptoDir Crypto dir. The jobs are kept under it
+     * @param conf      Rate limits and in flight window
+     * @param workers   Shared pool that loads the clients and encrypts the messages
+     */
+    public Broadcaster(ClientRepo repo, String cryptoDir, Configuration.Broadcast conf, Executor workers) {
+        this.repo = repo;
+        this.conf = conf;
+        this.jobs = Paths.get(cryptoDir, JOBS).normalize();
+        this.workers = workers;
+        this.global = RateLimiter.create(conf.rate);
+        this.bots = CacheBuilder.newBuilder()
+                .expireAfterAccess((long) Math.ceil(60 / conf.botRatePerMinute), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Resumes the jobs that were running when the service stopped and starts the periodic checkpoints
+     */
+    public void start() throws IOException {
+        Files.createDirectories(jobs);
+        try (Stream<Path> dirs = Files.list(jobs)) {
+            dirs.filter(dir -> Files.exists(dir.resolve(BroadcastJob.JOB))).forEach(dir -> {
+                try {
+                    BroadcastJob job = BroadcastJob.load(dir);
+                    if (!job.isFinished()) {
+                        Logger.info("%s. Resuming", job);
+                        run(job);
+                    }
+                } catch (IOException e) {
+                    Logger.error("Broadcaster: failed to load %s: %s", dir, e);
+                }
+            });
+        }
+        scheduler.scheduleWithFixedDelay(this::checkpoint, conf.checkpointMillis, conf.checkpointMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops dispatching and writes the checkpoints. Running jobs are resumed on the next start
+     */
+    public void stop() {
+        stopping = true;
+        checkpoint();
+    }
+
+    /**
+     * Creates a job for all the stored bots and starts it
+     *
+     * @param text Text to broadcast
+     * @return Running job
+     */
+    public BroadcastJob broadcast(String text) throws IOException {
+        return broadcast(text, repo.getStorage().getBotIds());
+    }
+
+    /**
+     * Creates a job for the given bots and starts it
+     *
+     * @param text    Text to broadcast
+     * @param targets Bot ids
+     * @return Running job
+     */
+    public BroadcastJob broadcast(String text, Collection<String> targets) throws IOException {
+        BroadcastJob job = BroadcastJob.create(jobs.resolve(UUID.randomUUID().toString()), text, targets);
+        Logger.info("%s. Started", job);
+        run(job);
+        return job;
+    }
+
+    /**
+     * @param id Job id
+     * @return Running, suspended or finished job or null if there is no such job
+     */
+    public BroadcastJob get(String id) throws IOException {
+        BroadcastJob job = running.get(id);
+        if (job != null)
+            return job;
+
+        Path dir = jobs.resolve(id).normalize();
+        if (!dir.getParent().equals(jobs) || !Files.exists(dir.resolve(BroadcastJob.JOB)))
+            return null;
+
+        job = BroadcastJob.load(dir);
+        // not dispatched by this process
+        job.suspended();
+        return job;
+    }
+
+    public Collection<BroadcastJob> getRunning() {
+        return running.values();
+    }
+
+    /**
+     * Registers the sent and failed messages of all the jobs and the number of running jobs
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("broadcast.sent", sent);
+        metrics.register("broadcast.failed", failed);
+        metrics.register("broadcast.running", (Gauge<Integer>) running::size);
+    }
+
+    private void run(BroadcastJob job) {
+        running.put(job.getId(), job);
+        Thread dispatcher = new Thread(() -> dispatch(job), "Broadcaster-" + job.getId());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatch(BroadcastJob job) {
+        Semaphore window = new Semaphore(conf.inflight);
+        boolean finished = false;
+        try {
+            PreparedMessage message = prepare(job);
+            try (BufferedReader targets = job.openTargets()) {
+                String botId;
+                for (long index = 0; (botId = targets.readLine()) != null; index++) {
+                    if (stopping || job.getState() != BroadcastJob.State.RUNNING)
+                        break;
+                    if (job.isDone(index))
+                        continue;
+
+                    window.acquire();
+                    global.acquire();
+                    submit(job, message, index, botId, window);
+                }
+            }
+
+            // wait for the messages in flight
+            window.acquire(conf.inflight);
+            if (!stopping) {
+                job.finish(job.getState() == BroadcastJob.State.RUNNING
+                        ? BroadcastJob.State.DONE
+                        : BroadcastJob.State.CANCELLED);
+                finished = true;
+                Logger.info("%s. Finished", job);
+            }
+        } catch (Exception e) {
+            Logger.error("%s. Interrupted: %s", job, e);
+            try {
+                // let the messages in flight complete before the last checkpoint
+                window.tryAcquire(conf.inflight, 30, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            if (!finished) {
+                try {
+                    // nothing would resume a job that broke while the service keeps running
+                    if (stopping)
+                        job.suspend();
+                    else
+                        job.finish(BroadcastJob.State.FAILED);
+                } catch (IOException e) {
+                    Logger.error("Broadcast %s: failed to write checkpoint: %s", job.getId(), e);
+                }
+            }
+            running.remove(job.getId());
+        }
+    }
+
+    /**
+     * Hands the target to a worker. A bot that got a message of another broadcast too recently is retried later
+     * without holding a worker. Holds a permit of the window until the message is sent
+     */
+    private void submit(BroadcastJob job, PreparedMessage message, long index, String botId, Semaphore window) {
+        if (stopping) {
+            // not marked as done: sent when the job resumes
+            window.release();
+            return;
+        }
+
+        if (!limiter(botId).tryAcquire()) {
+            long delay = (long) Math.ceil(60000 / conf.botRatePerMinute);
+            scheduler.schedule(() -> submit(job, message, index, botId, window), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        try {
+            workers.execute(() -> send(job, message, index, botId).whenComplete((v, t) -> window.release()));
+        } catch (RuntimeException e) {
+            window.release();
+            Logger.error("Broadcast %s: bot: %s, not sent: %s", job.getId(), botId, e);
+        }
+    }
+
+    /**
+     * Builds the message once. Resumed jobs reuse the message id so the messages sent again are dropped as duplicates
+     */
+    private static PreparedMessage prepare(BroadcastJob job) throws Exception {
+        Text text = new Text(job.getText());
+        text.setMessageId(job.getMessageId());
+        return new PreparedMessage(text);
+    }
+
+    private CompletableFuture<Void> send(BroadcastJob job, IGeneric message, long index, String botId) {
+        ClientRepo.Lease lease = repo.acquire(botId);
+        if (lease == null) {
+            fail(job, index, botId, "Unknown bot");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> future;
+        try {
+            future = lease.getClient().async(workers).send(message);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        // the client stays open until the message is sent
+        return future.handle((v, t) -> {
+            lease.close();
+            if (t == null) {
+                job.succeeded(index);
+                sent.mark();
+            } else {
+                fail(job, index, botId, (t instanceof CompletionException ? t.getCause() : t).toString());
+            }
+            return null;
+        });
+    }
+
+    private void fail(BroadcastJob job, long index, String botId, String error) {
+        job.failed(index, botId, error);
+        failed.mark();
+        Logger.warning("Broadcast %s: bot: %s, error: %s", job.getId(), botId, error);
+    }
+
+    private RateLimiter limiter(String botId) {
+        return bots.asMap().computeIfAbsent(botId, id -> RateLimiter.create(conf.botRatePerMinute / 60));
+    }
+
+    private void checkpoint() {
+        for (BroadcastJob job : running.values()) {
+            try {
+                job.checkpoint();
+            } catch (IOException e) {
+                Logger.error("Broadcast %s: failed to write checkpoint: %s", job.getId(), e);
+            }
+        }
+    }
+}
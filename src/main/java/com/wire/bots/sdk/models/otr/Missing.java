@@ -22,4 +22,25 @@ public class Missing extends HashMap<String, Collection<String>> {
         }
         clients.add(clientId);
     }
+
+    public void addAll(Missing missing) {
+        for (String userId : missing.toUserIds()) {
+            for (String clientId : missing.toClients(userId)) {
+                Collection<String> clients = toClients(userId);
+                if (clients == null || !clients.contains(clientId))
+                    add(userId, clientId);
+            }
+        }
+    }
+
+    public void removeAll(Missing missing) {
+        for (String userId : missing.toUserIds()) {
+            Collection<String> clients = toClients(userId);
+            if (clients != null) {
+                clients.removeAll(missing.toClients(userId));
+                if (clients.isEmpty())
+                    remove(userId);
+            }
+        }
+    }
 }
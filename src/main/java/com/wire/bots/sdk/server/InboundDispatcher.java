@@ -0,0 +1,183 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.server;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.wire.bots.sdk.Logger;
+import com.wire.bots.sdk.server.model.InboundMessage;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues inbound messages per bot and processes them on a worker pool. Messages of one bot are processed one at a
+ * time in the order they were submitted, different bots are processed in parallel. Queues are bounded: both the
+ * number of messages per bot and in total.
+ */
+public class InboundDispatcher {
+    private static final int BATCH = 32;
+
+    private final ConcurrentHashMap<String, BotQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Meter rejected = new Meter();
+    private final Executor executor;
+    private final Handler handler;
+    private final int queueSize;
+    private final int maxPending;
+
+    /**
+     * @param executor   Worker pool
+     * @param handler    Processes one message
+     * @param queueSize  Max number of queued messages per bot
+     * @param maxPending Max number of queued messages for all the bots
+     */
+    public InboundDispatcher(Executor executor, Handler handler, int queueSize, int maxPending) {
+        this.executor = executor;
+        this.handler = handler;
+        this.queueSize = queueSize;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Queues the message for processing
+     *
+     * @param botId   Bot ID
+     * @param inbound Message
+     * @return False if the queue is full. The message is not queued in that case
+     */
+    public boolean submit(String botId, InboundMessage inbound) {
+        while (true) {
+            BotQueue queue = queues.computeIfAbsent(botId, BotQueue::new);
+            synchronized (queue) {
+                if (queue.removed)
+                    continue;   // drained and dropped concurrently, take a new one
+
+                if (queue.messages.size() >= queueSize)
+                    return reject(queue);
+
+                if (pending.incrementAndGet() > maxPending) {
+                    pending.decrementAndGet();
+                    return reject(queue);
+                }
+
+                queue.messages.add(inbound);
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    executor.execute(queue);
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean reject(BotQueue queue) {
+        if (queue.messages.isEmpty() && !queue.scheduled) {
+            queue.removed = true;
+            queues.remove(queue.botId, queue);
+        }
+        rejected.mark();
+        return false;
+    }
+
+    /**
+     * @return Number of queued messages
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Waits for the queued messages to be processed
+     *
+     * @param timeout Max time to wait
+     * @param unit    Time unit
+     * @return False if there were still messages pending when the time ran out
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Registers queue depth and rejections
+     *
+     * @param metrics Metric registry
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register("inbound.pending", (Gauge<Integer>) pending::get);
+        metrics.register("inbound.bots", (Gauge<Integer>) queues::size);
+        metrics.register("inbound.rejected", rejected);
+    }
+
+    public interface Handler {
+        void handle(String botId, InboundMessage inbound) throws Exception;
+    }
+
+    /**
+     * Messages of one bot. Scheduled on the executor while it has messages, at most one worker at a time
+     */
+    private class BotQueue implements Runnable {
+        private final String botId;
+        private final ArrayDeque<InboundMessage> messages = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean removed;
+
+        BotQueue(String botId) {
+            this.botId = botId;
+        }
+
+        @Override
+        public void run() {
+            // process a batch and yield the worker so that busy bots don't starve the others
+            for (int i = 0; i < BATCH; i++) {
+                InboundMessage inbound;
+                synchronized (this) {
+                    inbound = messages.poll();
+                    if (inbound == null) {
+                        scheduled = false;
+                        removed = true;
+                        queues.remove(botId, this);
+                        return;
+                    }
+                }
+
+                try {
+                    handler.handle(botId, inbound);
+                } catch (Exception e) {
+                    Logger.error("InboundDispatcher: bot: %s, type: %s, error: %s", botId, inbound.type, e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+
+            executor.execute(this);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package com.wire.bots.sdk.server.resources;
 import com.wire.bots.sdk.*;
 import com.wire.bots.sdk.server.model.NewBot;
 import com.wire.bots.sdk.server.model.NewBotResponseModel;
+import com.wire.bots.sdk.storage.BotState;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
@@ -35,11 +36,20 @@ public class BotsResource {
     private final MessageHandlerBase handler;
     private final Configuration conf;
     private final ClientRepo repo;
+    private final PreKeyPool pool;
 
     public BotsResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo) {
+        this(handler, conf, repo, null);
+    }
+
+    /**
+     * @param pool Boxes with prekeys generated in the background. null generates the keys while creating the bot
+     */
+    public BotsResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo, PreKeyPool pool) {
         this.handler = handler;
         this.conf = conf;
         this.repo = repo;
+        this.pool = pool;
     }
 
     @POST
@@ -63,14 +73,20 @@ public class BotsResource {
         String path = String.format("%s/%s", conf.getCryptoDir(), newBot.id);
 
         File dir = new File(path);
-        if (!dir.mkdirs())
+        PreKeyPool.Batch batch = pool != null ? pool.take(dir) : null;
+        if (batch == null && !dir.mkdirs())
             Logger.warning("Failed to create dir: %s", dir.getAbsolutePath());
 
-        Util.writeLine(newBot.client, new File(path + "/client.id"));
-        Util.writeLine(newBot.token, new File(path + "/token.id"));
-        Util.writeLine(newBot.conversation.id, new File(path + "/conversation.id"));
-        Util.writeLine(newBot.origin.id, new File(path + "/origin.id"));
-        Util.writeLine(newBot.locale, new File(path + "/locale"));
+        BotState state = new BotState();
+        state.id = newBot.id;
+        state.client = newBot.client;
+        state.token = newBot.token;
+        state.conversation = newBot.conversation.id;
+        state.origin = newBot.origin.id;
+        state.locale = newBot.locale;
+        state.created = System.currentTimeMillis();
+        state.members = newBot.conversation.members.size();
+        repo.getStorage().save(state);
 
         NewBotResponseModel ret = new NewBotResponseModel();
         ret.name = handler.getName();
@@ -98,9 +114,25 @@ public class BotsResource {
             ret.assets.add(asset);
         }
 
-        WireClient client = repo.getWireClient(newBot.id);
-        ret.lastPreKey = client.newLastPreKey();
-        ret.preKeys = client.newPreKeys(0, newBot.conversation.members.size() * 8);
+        int preKeys = newBot.conversation.members.size() * 8;
+        if (batch != null) {
+            ret.lastPreKey = batch.lastPreKey;
+            ret.preKeys = batch.preKeys;
+            // large conversations need more keys than the pooled box holds: generate the rest after the pooled ids
+            if (preKeys > batch.preKeys.size()) {
+                try (ClientRepo.Lease lease = repo.acquire(newBot.id)) {
+                    WireClient client = lease.getClient();
+                    int from = batch.preKeys.size();
+                    ret.preKeys.addAll(client.newPreKeys(from, preKeys - from));
+                }
+            }
+        } else {
+            try (ClientRepo.Lease lease = repo.acquire(newBot.id)) {
+                WireClient client = lease.getClient();
+                ret.lastPreKey = client.newLastPreKey();
+                ret.preKeys = client.newPreKeys(0, preKeys);
+            }
+        }
 
         return Response.
                 ok(ret).
@@ -19,17 +19,52 @@
 package com.wire.bots.sdk.server.resources;
 
 import com.wire.bots.sdk.*;
+import com.wire.bots.sdk.server.InboundDispatcher;
 import com.wire.bots.sdk.server.model.InboundMessage;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.concurrent.Executor;
 
 @Produces(MediaType.APPLICATION_JSON)
 @Path("/bots/{bot}/messages")
 public class MessageResource extends MessageResourceBase {
+    private final InboundDispatcher dispatcher;
+
     public MessageResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo) {
         super(handler, conf, repo);
+        this.dispatcher = null;
+    }
+
+    public MessageResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo,
+                           PreKeyReplenisher prekeys) {
+        super(handler, conf, repo, prekeys);
+        this.dispatcher = null;
+    }
+
+    /**
+     * Messages are queued on the executor and acknowledged before they are processed. Messages of one bot are
+     * processed in order
+     *
+     * @param executor Worker pool that processes the queued messages
+     */
+    public MessageResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo, Executor executor) {
+        this(handler, conf, repo, executor, new PreKeyReplenisher(repo, conf.getPreKeys().replenishDelayMillis));
+    }
+
+    /**
+     * Messages are queued on the executor and acknowledged before they are processed. Messages of one bot are
+     * processed in order
+     *
+     * @param executor Worker pool that processes the queued messages
+     * @param prekeys  Replenisher shared by all the resources of the repo
+     */
+    public MessageResource(MessageHandlerBase handler, Configuration conf, ClientRepo repo, Executor executor,
+                           PreKeyReplenisher prekeys) {
+        super(handler, conf, repo, prekeys);
+        Configuration.Inbound inbound = conf.getInbound();
+        this.dispatcher = new InboundDispatcher(executor, this::process, inbound.queueSize, inbound.maxPending);
     }
 
     @POST
@@ -47,15 +82,45 @@ public class MessageResource extends MessageResourceBase {
                     build();
         }
 
-        WireClient client = repo.getWireClient(bot);
-        if (client == null) {
+        if (dispatcher != null) {
+            if (inbound == null || inbound.type == null) {
+                return Response.
+                        ok().
+                        status(400).
+                        build();
+            }
+
+            if (repo.getStorage().get(bot) == null) {
+                return Response.
+                        ok().
+                        status(410).
+                        build();
+            }
+
+            if (!dispatcher.submit(bot, inbound)) {
+                return Response.
+                        ok().
+                        status(503).
+                        header("Retry-After", conf.getInbound().retryAfterSeconds).
+                        build();
+            }
+
             return Response.
                     ok().
-                    status(410).
+                    status(200).
                     build();
         }
 
-        handleMessage(inbound, client);
+        try (ClientRepo.Lease lease = repo.acquire(bot)) {
+            if (lease == null) {
+                return Response.
+                        ok().
+                        status(410).
+                        build();
+            }
+
+            handleMessage(inbound, lease.getClient());
+        }
 
         return Response.
                 ok().
@@ -63,6 +128,21 @@ public class MessageResource extends MessageResourceBase {
                 build();
     }
 
+    /**
+     * @return Async dispatcher or NULL if the messages are processed on the request thread
+     */
+    public InboundDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    private void process(String bot, InboundMessage inbound) throws Exception {
+        try (ClientRepo.Lease lease = repo.acquire(bot)) {
+            if (lease != null) {
+                handleMessage(inbound, lease.getClient());
+            }
+        }
+    }
+
     @Deprecated
     public void onNewMessage(String bot, String convId, InboundMessage inbound) throws Exception {
         WireClient client = repo.getWireClient(bot, convId);
@@ -2,23 +2,30 @@ package com.wire.bots.sdk.server.resources;
 
 import com.waz.model.Messages;
 import com.wire.bots.sdk.*;
-import com.wire.bots.sdk.models.otr.PreKey;
 import com.wire.bots.sdk.server.GenericMessageProcessor;
 import com.wire.bots.sdk.server.model.InboundMessage;
 
-import java.util.ArrayList;
-import java.util.Collections;
 
 public abstract class MessageResourceBase {
 
     protected final MessageHandlerBase handler;
     protected final Configuration conf;
     protected final ClientRepo repo;
+    private final PreKeyReplenisher prekeys;
 
     public MessageResourceBase(MessageHandlerBase handler, Configuration conf, ClientRepo repo) {
+        this(handler, conf, repo, new PreKeyReplenisher(repo, conf.getPreKeys().replenishDelayMillis));
+    }
+
+    /**
+     * @param prekeys Replenisher shared by all the resources of the repo so they keep one estimate per bot
+     */
+    public MessageResourceBase(MessageHandlerBase handler, Configuration conf, ClientRepo repo,
+                               PreKeyReplenisher prekeys) {
         this.handler = handler;
         this.conf = conf;
         this.repo = repo;
+        this.prekeys = prekeys;
     }
 
     protected void handleMessage(InboundMessage inbound, WireClient client) throws Exception {
@@ -47,16 +54,9 @@ public abstract class MessageResourceBase {
                     handler.onNewConversation(client);
                 }
 
-                int minAvailable = 8 * data.userIds.size();
-                if (minAvailable > 0) {
-                    ArrayList<Integer> availablePrekeys = client.getAvailablePrekeys();
-                    availablePrekeys.remove(new Integer(65535));  //remove last prekey
-                    if (availablePrekeys.size() < minAvailable) {
-                        Integer lastKeyOffset = Collections.max(availablePrekeys);
-                        ArrayList<PreKey> keys = client.newPreKeys(lastKeyOffset + 1, minAvailable);
-                        client.uploadPreKeys(keys);
-                        Logger.info("Uploaded " + keys.size() + " prekeys");
-                    }
+                if (!data.userIds.isEmpty()) {
+                    repo.updateMembers(botId, data.userIds.size());
+                    prekeys.onMemberJoin(botId, data.userIds.size());
                     handler.onMemberJoin(client, data.userIds);
                 }
             }
@@ -73,6 +73,8 @@ public abstract class MessageResourceBase {
                 }
 
                 if (!data.userIds.isEmpty()) {
+                    repo.updateMembers(botId, -data.userIds.size());
+                    client.onMemberLeave(data.userIds);
                     handler.onMemberLeave(client, data.userIds);
                 }
             }
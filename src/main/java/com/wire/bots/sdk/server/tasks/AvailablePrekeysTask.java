@@ -5,7 +5,6 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.collect.ImmutableMultimap;
 import com.wire.bots.sdk.ClientRepo;
 import com.wire.bots.sdk.Logger;
-import com.wire.bots.sdk.WireClient;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -26,9 +25,8 @@ public class AvailablePrekeysTask extends TaskBase {
             return;
         }
 
-        try {
-            WireClient client = repo.getWireClient(botId);
-            ArrayList<Integer> availablePrekeys = client.getAvailablePrekeys();
+        try (ClientRepo.Lease lease = repo.acquire(botId)) {
+            ArrayList<Integer> availablePrekeys = lease.getClient().getAvailablePrekeys();
             ObjectMapper mapper = new ObjectMapper();
             mapper.enable(SerializationFeature.INDENT_OUTPUT);
 
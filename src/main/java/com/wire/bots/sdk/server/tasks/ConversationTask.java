@@ -5,7 +5,6 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.collect.ImmutableMultimap;
 import com.wire.bots.sdk.ClientRepo;
 import com.wire.bots.sdk.Logger;
-import com.wire.bots.sdk.WireClient;
 import com.wire.bots.sdk.server.model.Conversation;
 
 import java.io.PrintWriter;
@@ -26,9 +25,8 @@ public class ConversationTask extends TaskBase {
             return;
         }
 
-        try {
-            WireClient client = repo.getWireClient(botId);
-            Conversation conversation = client.getConversation();
+        try (ClientRepo.Lease lease = repo.acquire(botId)) {
+            Conversation conversation = lease.getClient().getConversation();
             ObjectMapper mapper = new ObjectMapper();
             mapper.enable(SerializationFeature.INDENT_OUTPUT);
 
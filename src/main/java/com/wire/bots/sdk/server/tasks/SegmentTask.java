@@ -0,0 +1,40 @@
+package com.wire.bots.sdk.server.tasks;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.wire.bots.sdk.storage.IndexedBotStorage;
+import com.wire.bots.sdk.storage.Segment;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Counts the bots in a segment and optionally lists them
+ * Usage:
+ * curl -X POST http://localhost:8051/tasks/segment --data "locale=de&min_members=10&list=true"
+ * See {@link TaskBase#extractSegment} for the segment parameters
+ */
+public class SegmentTask extends TaskBase {
+    private final IndexedBotStorage index;
+
+    public SegmentTask(IndexedBotStorage index) {
+        super("segment");
+        this.index = index;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        Segment segment = extractSegment(parameters);
+        if (segment == null) {
+            output.println("Missing segment parameters");
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<String> botIds = index.select(segment);
+        output.printf("%,d bots in %,d ms. %s\n", botIds.size(), (System.nanoTime() - start) / 1000000, segment);
+        if (Boolean.parseBoolean(extractString(parameters, "list"))) {
+            for (String botId : botIds)
+                output.println(botId);
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.wire.bots.sdk.server.tasks;
 
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMultimap;
+import com.wire.bots.sdk.storage.Segment;
 import io.dropwizard.servlets.tasks.Task;
 
+import java.time.Instant;
+
 public abstract class TaskBase extends Task {
 
     public TaskBase(String name) {
@@ -37,4 +40,33 @@ public abstract class TaskBase extends Task {
     protected static String extractString(ImmutableMultimap<String, String> parameters, String name) {
         return extractString(parameters, name, "");
     }
+
+    /**
+     * Reads the segment parameters: locale, origin, created_after, created_before (ISO-8601 instant or millis),
+     * min_members and max_members
+     *
+     * @return Segment or null if none of the parameters is set
+     */
+    protected static Segment extractSegment(ImmutableMultimap<String, String> parameters) {
+        Segment segment = new Segment();
+        segment.locale = extractString(parameters, "locale", null);
+        segment.origin = extractString(parameters, "origin", null);
+        segment.createdAfter = extractTime(parameters, "created_after");
+        segment.createdBefore = extractTime(parameters, "created_before");
+        if (!parameters.get("min_members").isEmpty())
+            segment.minMembers = extract(parameters, "min_members");
+        if (!parameters.get("max_members").isEmpty())
+            segment.maxMembers = extract(parameters, "max_members");
+
+        if (segment.locale == null && segment.origin == null && !segment.hasCreated() && !segment.hasMembers())
+            return null;
+        return segment;
+    }
+
+    private static Long extractTime(ImmutableMultimap<String, String> parameters, String name) {
+        String time = extractString(parameters, name, null);
+        if (time == null)
+            return null;
+        return time.chars().allMatch(Character::isDigit) ? Long.valueOf(time) : Instant.parse(time).toEpochMilli();
+    }
 }
@@ -0,0 +1,65 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Metadata of one bot: everything that is needed to recreate its client
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BotState {
+    @JsonProperty
+    public String id;
+    @JsonProperty
+    public String client;
+    @JsonProperty
+    public String token;
+    @JsonProperty
+    public String conversation;
+    @JsonProperty
+    public String origin;
+    @JsonProperty
+    public String locale;
+    /**
+     * Time the bot was created (millis). 0 if not known
+     */
+    @JsonProperty
+    public long created;
+    /**
+     * Number of the other members of the conversation. -1 if not known
+     */
+    @JsonProperty
+    public int members = -1;
+
+    public BotState copy() {
+        BotState ret = new BotState();
+        ret.id = id;
+        ret.client = client;
+        ret.token = token;
+        ret.conversation = conversation;
+        ret.origin = origin;
+        ret.locale = locale;
+        ret.created = created;
+        ret.members = members;
+        return ret;
+    }
+}
@@ -0,0 +1,67 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Storage of the bot metadata. Implementations must be thread safe
+ */
+public interface BotStorage extends Closeable {
+    /**
+     * @param botId Bot ID
+     * @return Stored state or NULL if there is no such bot
+     */
+    BotState get(String botId) throws IOException;
+
+    /**
+     * Stores the state atomically, replacing the previous state of the bot if any
+     *
+     * @param state Bot state. Must not be modified after this call
+     */
+    void save(BotState state) throws IOException;
+
+    /**
+     * Stores the states, each one atomically. Implementations may write them at once
+     *
+     * @param states Bot states. Must not be modified after this call
+     */
+    default void saveAll(Collection<BotState> states) throws IOException {
+        for (BotState state : states) {
+            save(state);
+        }
+    }
+
+    /**
+     * @param botId Bot ID
+     * @return True if the bot was stored
+     */
+    boolean remove(String botId) throws IOException;
+
+    /**
+     * @return IDs of all the stored bots
+     */
+    Collection<String> getBotIds() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,118 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+import com.wire.bots.sdk.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Legacy layout: one directory per bot with a file per attribute (client.id, token.id, conversation.id, origin.id
+ * and locale). Every lookup hits the file system
+ */
+public class FileBotStorage implements BotStorage {
+    private static final String CLIENT_ID = "client.id";
+    private static final String TOKEN_ID = "token.id";
+    private static final String CONVERSATION_ID = "conversation.id";
+    private static final String ORIGIN_ID = "origin.id";
+    private static final String LOCALE = "locale";
+
+    private final String path;
+
+    /**
+     * @param path Crypto dir
+     */
+    public FileBotStorage(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public BotState get(String botId) throws IOException {
+        File clientFile = file(botId, CLIENT_ID);
+        File tokenFile = file(botId, TOKEN_ID);
+        if (!clientFile.exists() || !tokenFile.exists())
+            return null;
+
+        BotState state = new BotState();
+        state.id = botId;
+        state.client = Util.readLine(clientFile);
+        state.token = Util.readLine(tokenFile);
+        state.conversation = readOptional(file(botId, CONVERSATION_ID));
+        state.origin = readOptional(file(botId, ORIGIN_ID));
+        state.locale = readOptional(file(botId, LOCALE));
+        return state;
+    }
+
+    @Override
+    public void save(BotState state) throws IOException {
+        File dir = new File(String.format("%s/%s", path, state.id));
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Failed to create dir: " + dir.getAbsolutePath());
+
+        writeOptional(state.client, file(state.id, CLIENT_ID));
+        writeOptional(state.token, file(state.id, TOKEN_ID));
+        writeOptional(state.conversation, file(state.id, CONVERSATION_ID));
+        writeOptional(state.origin, file(state.id, ORIGIN_ID));
+        writeOptional(state.locale, file(state.id, LOCALE));
+    }
+
+    @Override
+    public boolean remove(String botId) {
+        boolean ret = file(botId, CLIENT_ID).delete();
+        file(botId, TOKEN_ID).delete();
+        file(botId, CONVERSATION_ID).delete();
+        file(botId, ORIGIN_ID).delete();
+        file(botId, LOCALE).delete();
+        return ret;
+    }
+
+    @Override
+    public Collection<String> getBotIds() {
+        ArrayList<String> ret = new ArrayList<>();
+        File[] dirs = new File(path).listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (new File(dir, CLIENT_ID).exists())
+                    ret.add(dir.getName());
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private File file(String botId, String name) {
+        return new File(String.format("%s/%s/%s", path, botId, name));
+    }
+
+    private static String readOptional(File file) throws IOException {
+        return file.exists() ? Util.readLine(file) : null;
+    }
+
+    private static void writeOptional(String value, File file) throws IOException {
+        if (value != null)
+            Util.writeLine(value, file);
+    }
+}
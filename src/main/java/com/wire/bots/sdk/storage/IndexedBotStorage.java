@@ -0,0 +1,267 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Keeps an in-memory secondary index over the bot attributes (locale, origin, creation time and conversation size)
+ * of the wrapped storage, so that segments of bots can be selected without reading the storage.
+ * <p>
+ * The index is built when the storage is opened and is updated on every save and remove. Conversation sizes change
+ * often (on every member join and leave) so they are only updated in the index and written to the storage in batches
+ * by {@link #flush()} and when the storage is closed. Locale and origin are hash indexed, creation time and
+ * conversation size are kept in sorted sets for range queries. A query starts from the smallest candidate set it can
+ * find and filters the rest of the attributes. Queries do not block updates and may not see the updates that run
+ * concurrently.
+ * <p>
+ * Bots stored before these attributes were recorded (including the ones imported from {@link FileBotStorage}) have
+ * no creation time (0) and an unknown conversation size (-1). They can only be selected by locale and origin: a
+ * segment with a creation time or conversation size range never matches them, and member joins and leaves do not
+ * give them a size.
+ */
+public class IndexedBotStorage implements BotStorage {
+    private static final Comparator<Entry> BY_CREATED = Comparator.<Entry>comparingLong(e -> e.created)
+            .thenComparing(e -> e.botId);
+    private static final Comparator<Entry> BY_MEMBERS = Comparator.<Entry>comparingInt(e -> e.members)
+            .thenComparing(e -> e.botId);
+
+    private final BotStorage storage;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> locales = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> origins = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> created = new ConcurrentSkipListSet<>(BY_CREATED);
+    private final ConcurrentSkipListSet<Entry> members = new ConcurrentSkipListSet<>(BY_MEMBERS);
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();    // conversation size not saved yet
+
+    /**
+     * @param storage Storage to index. Must not be modified other than through this instance
+     */
+    public IndexedBotStorage(BotStorage storage) throws IOException {
+        this.storage = storage;
+        for (String botId : storage.getBotIds()) {
+            BotState state = storage.get(botId);
+            if (state != null)
+                index(state);
+        }
+    }
+
+    @Override
+    public BotState get(String botId) throws IOException {
+        BotState state = storage.get(botId);
+        return state != null && dirty.contains(botId) ? withMembers(state) : state;
+    }
+
+    @Override
+    public synchronized void save(BotState state) throws IOException {
+        if (dirty.remove(state.id))
+            state = withMembers(state);
+        storage.save(state);
+        index(state);
+    }
+
+    @Override
+    public synchronized boolean remove(String botId) throws IOException {
+        boolean ret = storage.remove(botId);
+        dirty.remove(botId);
+        unindex(entries.remove(botId));
+        return ret;
+    }
+
+    /**
+     * Adjusts the conversation size of the bot in the index. It is saved by the next {@link #flush()}. Does nothing if
+     * the bot or its conversation size is not known
+     *
+     * @param botId Bot ID
+     * @param delta Number of members that joined (positive) or left (negative)
+     */
+    public synchronized void updateMembers(String botId, int delta) {
+        Entry entry = entries.get(botId);
+        if (entry == null || entry.members < 0)
+            return;
+
+        Entry update = new Entry(botId, entry.locale, entry.origin, entry.created, Math.max(0, entry.members + delta));
+        entries.put(botId, update);
+        members.remove(entry);
+        members.add(update);
+        dirty.add(botId);
+    }
+
+    /**
+     * Saves the conversation sizes that changed since the last flush in one batch
+     */
+    public synchronized void flush() throws IOException {
+        if (dirty.isEmpty())
+            return;
+
+        ArrayList<BotState> states = new ArrayList<>(dirty.size());
+        for (String botId : dirty) {
+            BotState state = storage.get(botId);
+            if (state != null)
+                states.add(withMembers(state));
+        }
+        storage.saveAll(states);
+        dirty.clear();
+    }
+
+    @Override
+    public Collection<String> getBotIds() throws IOException {
+        return storage.getBotIds();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * @param segment Attributes to match
+     * @return IDs of the matching bots
+     */
+    public ArrayList<String> select(Segment segment) {
+        ArrayList<String> ret = new ArrayList<>();
+        for (Entry entry : candidates(segment)) {
+            if (segment.matches(entry.locale, entry.origin, entry.created, entry.members))
+                ret.add(entry.botId);
+        }
+        return ret;
+    }
+
+    private Iterable<Entry> candidates(Segment segment) {
+        Set<String> byLocale = segment.locale != null ? lookup(locales, segment.locale) : null;
+        Set<String> byOrigin = segment.origin != null ? lookup(origins, segment.origin) : null;
+        Set<String> ids = byLocale;
+        if (ids == null || (byOrigin != null && byOrigin.size() < ids.size()))
+            ids = byOrigin;
+        if (ids != null)
+            return resolve(ids);
+
+        if (segment.hasCreated()) {
+            long from = segment.createdAfter != null ? Math.max(1, segment.createdAfter) : 1;
+            if (segment.createdBefore == null)
+                return created.tailSet(bound(from, 0), true);
+            if (segment.createdBefore <= from)
+                return new ArrayList<>();
+            return created.subSet(bound(from, 0), true, bound(segment.createdBefore, 0), false);
+        }
+
+        if (segment.hasMembers()) {
+            int from = segment.minMembers != null ? Math.max(0, segment.minMembers) : 0;
+            if (segment.maxMembers == null || segment.maxMembers == Integer.MAX_VALUE)
+                return members.tailSet(bound(0, from), true);
+            if (segment.maxMembers < from)
+                return new ArrayList<>();
+            return members.subSet(bound(0, from), true, bound(0, segment.maxMembers + 1), false);
+        }
+
+        return entries.values();
+    }
+
+    private ArrayList<Entry> resolve(Set<String> ids) {
+        ArrayList<Entry> ret = new ArrayList<>(ids.size());
+        for (String botId : ids) {
+            Entry entry = entries.get(botId);
+            if (entry != null)
+                ret.add(entry);
+        }
+        return ret;
+    }
+
+    private BotState withMembers(BotState state) {
+        Entry entry = entries.get(state.id);
+        if (entry == null)
+            return state;
+
+        BotState ret = state.copy();
+        ret.members = entry.members;
+        return ret;
+    }
+
+    private void index(BotState state) {
+        Entry entry = new Entry(state.id, state.locale, state.origin, state.created, state.members);
+        unindex(entries.put(entry.botId, entry));
+
+        add(locales, entry.locale, entry.botId);
+        add(origins, entry.origin, entry.botId);
+        if (entry.created > 0)
+            created.add(entry);
+        if (entry.members >= 0)
+            members.add(entry);
+    }
+
+    private void unindex(Entry entry) {
+        if (entry == null)
+            return;
+
+        remove(locales, entry.locale, entry.botId);
+        remove(origins, entry.origin, entry.botId);
+        created.remove(entry);
+        members.remove(entry);
+    }
+
+    private static Set<String> lookup(ConcurrentHashMap<String, Set<String>> index, String key) {
+        return index.getOrDefault(key, Collections.emptySet());
+    }
+
+    private static void add(ConcurrentHashMap<String, Set<String>> index, String key, String botId) {
+        if (key != null)
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(botId);
+    }
+
+    private static void remove(ConcurrentHashMap<String, Set<String>> index, String key, String botId) {
+        if (key == null)
+            return;
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(botId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Entry bound(long created, int members) {
+        return new Entry("", null, null, created, members);
+    }
+
+    private static class Entry {
+        final String botId;
+        final String locale;
+        final String origin;
+        final long created;
+        final int members;
+
+        Entry(String botId, String locale, String origin, long created, int members) {
+            this.botId = botId;
+            this.locale = locale;
+            this.origin = origin;
+            this.created = created;
+            this.members = members;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wire.bots.sdk.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Default bot storage: a single append-only log (bots.log in the crypto dir) with the whole index held in memory, so
+ * lookups never touch the file system.
+ * <p>
+ * Every update is one record line: {@code <crc32> <op> <json>}, written with a single append and forced to disk.
+ * A record torn by a crash fails its checksum and is dropped on the next open, so an update is either fully applied
+ * or not at all. Once the log holds more superseded records than live ones it is rewritten to a temp file that
+ * atomically replaces the log.
+ * <p>
+ * On the first open the bots found in the legacy per-bot files are imported. The legacy files are left in place and
+ * are deleted when the bot is removed.
+ */
+public class LogBotStorage implements BotStorage {
+    static final String LOG = "bots.log";
+    private static final String TMP = "bots.log.tmp";
+    private static final char SAVE = '+';
+    private static final char REMOVE = '-';
+    private static final int COMPACT_MIN = 1024;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ConcurrentHashMap<String, BotState> index = new ConcurrentHashMap<>();
+    private final FileBotStorage legacy;
+    private final Path log;
+    private final Path tmp;
+    private FileChannel channel;
+    private int garbage;
+
+    /**
+     * @param path Crypto dir
+     * @throws IOException if the log cannot be read or created
+     */
+    public LogBotStorage(String path) throws IOException {
+        File dir = new File(path);
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Failed to create dir: " + dir.getAbsolutePath());
+
+        this.legacy = new FileBotStorage(path);
+        this.log = new File(dir, LOG).toPath();
+        this.tmp = new File(dir, TMP).toPath();
+
+        if (Files.exists(log))
+            load();
+        else
+            migrate();
+
+        channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        compactIfNeeded();
+    }
+
+    @Override
+    public BotState get(String botId) {
+        return index.get(botId);
+    }
+
+    @Override
+    public synchronized void save(BotState state) throws IOException {
+        append(SAVE, state);
+        if (index.put(state.id, state) != null)
+            garbage++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Appends all the records with a single write and forces them to disk once
+     */
+    @Override
+    public synchronized void saveAll(Collection<BotState> states) throws IOException {
+        if (states.isEmpty())
+            return;
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (BotState state : states) {
+            records.write(record(SAVE, state));
+        }
+        ByteBuffer buf = ByteBuffer.wrap(records.toByteArray());
+        while (buf.hasRemaining())
+            channel.write(buf);
+        channel.force(false);
+
+        for (BotState state : states) {
+            if (index.put(state.id, state) != null)
+                garbage++;
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized boolean remove(String botId) throws IOException {
+        legacy.remove(botId);
+        if (!index.containsKey(botId))
+            return false;
+
+        BotState tombstone = new BotState();
+        tombstone.id = botId;
+        append(REMOVE, tombstone);
+        index.remove(botId);
+        garbage += 2;
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public Collection<String> getBotIds() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Rewrites the log keeping only the live records
+     */
+    public synchronized void compact() throws IOException {
+        rewrite(index.values());
+        channel.close();
+        channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        garbage = 0;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (garbage > COMPACT_MIN && garbage > index.size())
+            compact();
+    }
+
+    private void append(char op, BotState state) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(record(op, state));
+        while (buf.hasRemaining())
+            channel.write(buf);
+        channel.force(false);
+    }
+
+    private void load() throws IOException {
+        byte[] data = Files.readAllBytes(log);
+        int start = 0;
+        int records = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n')
+                end++;
+
+            if (end == data.length) {
+                // torn write at the tail: drop it
+                Logger.warning("LogBotStorage: dropping incomplete record at offset %d in %s", start, log);
+                try (FileChannel fc = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                    fc.truncate(start);
+                    fc.force(false);
+                }
+                break;
+            }
+
+            String line = new String(data, start, end - start, StandardCharsets.UTF_8);
+            if (!apply(line))
+                Logger.warning("LogBotStorage: skipping corrupt record at offset %d in %s", start, log);
+
+            records++;
+            start = end + 1;
+        }
+        garbage = records - index.size();
+    }
+
+    private boolean apply(String line) {
+        // <crc32> <op> <json>
+        if (line.length() < 12 || line.charAt(8) != ' ' || line.charAt(10) != ' ')
+            return false;
+
+        String json = line.substring(11);
+        try {
+            if (Long.parseLong(line.substring(0, 8), 16) != crc(json))
+                return false;
+
+            BotState state = mapper.readValue(json, BotState.class);
+            if (line.charAt(9) == SAVE)
+                index.put(state.id, state);
+            else if (line.charAt(9) == REMOVE)
+                index.remove(state.id);
+            else
+                return false;
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void migrate() throws IOException {
+        for (String botId : legacy.getBotIds()) {
+            BotState state = legacy.get(botId);
+            if (state != null)
+                index.put(botId, state);
+        }
+        rewrite(index.values());
+        if (!index.isEmpty())
+            Logger.info("LogBotStorage: imported %d bots into %s", index.size(), log);
+    }
+
+    /**
+     * Writes the records to the temp file and atomically replaces the log with it
+     */
+    private void rewrite(Collection<BotState> states) throws IOException {
+        try (FileChannel fc = FileChannel.open(tmp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (BotState state : states) {
+                ByteBuffer buf = ByteBuffer.wrap(record(SAVE, state));
+                while (buf.hasRemaining())
+                    fc.write(buf);
+            }
+            fc.force(true);
+        }
+        Files.move(tmp, log, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] record(char op, BotState state) throws IOException {
+        String json = mapper.writeValueAsString(state);
+        return String.format("%08x %c %s\n", crc(json), op, json).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long crc(String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
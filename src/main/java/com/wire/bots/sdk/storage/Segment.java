@@ -0,0 +1,77 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.storage;
+
+/**
+ * Selects bots by their attributes. Attributes that are not set match all the bots. Bots with an unknown creation
+ * time or conversation size never match a range on that attribute
+ */
+public class Segment {
+    public String locale;
+    public String origin;
+    /**
+     * Created at or after this time (millis)
+     */
+    public Long createdAfter;
+    /**
+     * Created before this time (millis)
+     */
+    public Long createdBefore;
+    public Integer minMembers;
+    public Integer maxMembers;
+
+    public boolean hasCreated() {
+        return createdAfter != null || createdBefore != null;
+    }
+
+    public boolean hasMembers() {
+        return minMembers != null || maxMembers != null;
+    }
+
+    boolean matches(String locale, String origin, long created, int members) {
+        if (this.locale != null && !this.locale.equals(locale))
+            return false;
+        if (this.origin != null && !this.origin.equals(origin))
+            return false;
+        if (hasCreated()) {
+            if (created <= 0)
+                return false;
+            if (createdAfter != null && created < createdAfter)
+                return false;
+            if (createdBefore != null && created >= createdBefore)
+                return false;
+        }
+        if (hasMembers()) {
+            if (members < 0)
+                return false;
+            if (minMembers != null && members < minMembers)
+                return false;
+            if (maxMembers != null && members > maxMembers)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("locale: %s, origin: %s, created: [%s, %s), members: [%s, %s]",
+                locale, origin, createdAfter, createdBefore, minMembers, maxMembers);
+    }
+}
@@ -20,8 +20,11 @@ package com.wire.bots.sdk.user;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wire.bots.sdk.BackendMetrics;
 import com.wire.bots.sdk.Logger;
-import com.wire.bots.sdk.Util;
+import com.wire.bots.sdk.MultipartUpload;
+import com.wire.bots.sdk.ResponseFuture;
+import com.wire.bots.sdk.Transport;
 import com.wire.bots.sdk.assets.IAsset;
 import com.wire.bots.sdk.models.AssetKey;
 import com.wire.bots.sdk.models.otr.*;
@@ -36,11 +39,12 @@ import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class API extends LoginClient {
 
@@ -61,15 +65,36 @@ public class API extends LoginClient {
     }
 
     Devices sendMessage(OtrMessage msg, boolean ignoreMissing) throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = BackendMetrics.invoke(endpoint(ignoreMissing), () -> messages(ignoreMissing).
+                post(Entity.entity(msg, MediaType.APPLICATION_JSON)));
+
+        return readDevices(response);
+    }
+
+    CompletableFuture<Devices> sendMessageAsync(OtrMessage msg, boolean ignoreMissing) {
+        ResponseFuture<Devices> ret = new ResponseFuture<>(endpoint(ignoreMissing), API::readDevices);
+        messages(ignoreMissing).
+                async().
+                post(Entity.entity(msg, MediaType.APPLICATION_JSON), ret);
+        return ret;
+    }
+
+    private Invocation.Builder messages(boolean ignoreMissing) {
+        return Transport.client().target(httpUrl).
                 path("conversations").
                 path(convId).
                 path("otr/messages").
                 queryParam("ignore_missing", ignoreMissing).
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                post(Entity.entity(msg, MediaType.APPLICATION_JSON));
+                property(BackendMetrics.ENDPOINT, endpoint(ignoreMissing));
+    }
 
+    private static String endpoint(boolean ignoreMissing) {
+        return ignoreMissing ? "messages.ignore-missing" : "messages";
+    }
+
+    private static Devices readDevices(Response response) throws IOException {
         int statusCode = response.getStatus();
         if (statusCode == 412) {
             //Logger.info(response.readEntity(String.class));
@@ -86,26 +111,77 @@ public class API extends LoginClient {
         if (missing.isEmpty())
             return new PreKeys();
 
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("prekeys.claim", () -> prekeys().
+                post(Entity.entity(missing, MediaType.APPLICATION_JSON), PreKeys.class));
+    }
+
+    CompletableFuture<PreKeys> getPreKeysAsync(Missing missing) {
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(new PreKeys());
+
+        ResponseFuture<PreKeys> ret = new ResponseFuture<>("prekeys.claim", response -> {
+            if (response.getStatus() >= 300)
+                throw new IOException("getPreKeys: " + response.readEntity(String.class));
+            return response.readEntity(PreKeys.class);
+        });
+        prekeys().async().post(Entity.entity(missing, MediaType.APPLICATION_JSON), ret);
+        return ret;
+    }
+
+    private Invocation.Builder prekeys() {
+        return Transport.client().target(httpUrl).
                 path("users/prekeys").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                accept(MediaType.APPLICATION_JSON).
-                post(Entity.entity(missing, MediaType.APPLICATION_JSON), PreKeys.class);
+                property(BackendMetrics.ENDPOINT, "prekeys.claim").
+                accept(MediaType.APPLICATION_JSON);
     }
 
     byte[] downloadAsset(String assetKey, String assetToken) throws IOException {
-        Invocation.Builder req = client.target(httpUrl)
+        Response response = BackendMetrics.invoke("assets.download", () -> asset(assetKey, assetToken).get());
+
+        return readAsset(response, assetKey);
+    }
+
+    /**
+     * @return Encrypted asset streamed from the response. Must be closed
+     */
+    InputStream downloadAssetStream(String assetKey, String assetToken) throws IOException {
+        Response response = BackendMetrics.invoke("assets.download", () -> asset(assetKey, assetToken).get());
+
+        return readAssetStream(response, assetKey);
+    }
+
+    CompletableFuture<byte[]> downloadAssetAsync(String assetKey, String assetToken) {
+        ResponseFuture<byte[]> ret = new ResponseFuture<>("assets.download", response -> readAsset(response, assetKey));
+        asset(assetKey, assetToken).async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder asset(String assetKey, String assetToken) {
+        Invocation.Builder req = Transport.client().target(httpUrl)
                 .path("assets/v3")
                 .path(assetKey)
                 .request()
-                .header("Authorization", "Bearer " + token);
+                .header("Authorization", "Bearer " + token)
+                .property(BackendMetrics.ENDPOINT, "assets.download");
 
         if (assetToken != null)
             req.header("Asset-Token", assetToken);
 
-        Response response = req.get();
+        return req;
+    }
+
+    private static InputStream readAssetStream(Response response, String assetKey) throws IOException {
+        if (response.getStatus() >= 300) {
+            Logger.warning(response.readEntity(String.class) + ". AssetId: " + assetKey);
+            throw new IOException(response.getStatusInfo().getReasonPhrase());
+        }
+
+        return response.readEntity(InputStream.class);
+    }
 
+    private static byte[] readAsset(Response response, String assetKey) throws IOException {
         if (response.getStatus() >= 300) {
             Logger.warning(response.readEntity(String.class) + ". AssetId: " + assetKey);
             throw new IOException(response.getStatusInfo().getReasonPhrase());
@@ -118,7 +194,7 @@ public class API extends LoginClient {
         Connection connection = new Connection();
         connection.setStatus("accepted");
 
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("connections").
                 path(user).
                 request(MediaType.APPLICATION_JSON).
@@ -129,10 +205,11 @@ public class API extends LoginClient {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
         }
+        response.close();
     }
 
     static String renewAccessToken(String cookie, String token) throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("access").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
@@ -149,44 +226,31 @@ public class API extends LoginClient {
     }
 
     AssetKey uploadAsset(IAsset asset) throws Exception {
-        StringBuilder sb = new StringBuilder();
-
-        // Part 1
-        String strMetadata = String.format("{\"public\": %s, \"retention\": \"%s\"}",
-                asset.isPublic(),
-                asset.getRetention());
-        sb.append("--frontier\r\n");
-        sb.append("Content-Type: application/json; charset=utf-8\r\n");
-        sb.append("Content-Length: ")
-                .append(strMetadata.length())
-                .append("\r\n\r\n");
-        sb.append(strMetadata)
-                .append("\r\n");
-
-        // Part 2
-        sb.append("--frontier\r\n");
-        sb.append("Content-Type: ")
-                .append(asset.getMimeType())
-                .append("\r\n");
-        sb.append("Content-Length: ")
-                .append(asset.getEncryptedData().length)
-                .append("\r\n");
-        sb.append("Content-MD5: ")
-                .append(Util.calcMd5(asset.getEncryptedData()))
-                .append("\r\n\r\n");
-
-        // Complete
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        os.write(sb.toString().getBytes("utf-8"));
-        os.write(asset.getEncryptedData());
-        os.write("\r\n--frontier--\r\n".getBytes("utf-8"));
-
-        Response response = client.target(httpUrl)
+        MultipartUpload upload = new MultipartUpload(asset);
+        Response response = BackendMetrics.invoke("assets.upload", () -> upload.post(assets()));
+
+        return readAssetKey(response);
+    }
+
+    CompletableFuture<AssetKey> uploadAssetAsync(IAsset asset) {
+        ResponseFuture<AssetKey> ret = new ResponseFuture<>("assets.upload", API::readAssetKey);
+        try {
+            new MultipartUpload(asset).post(assets(), ret);
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    private Invocation.Builder assets() {
+        return Transport.uploads().target(httpUrl)
                 .path("assets/v3")
                 .request(MediaType.APPLICATION_JSON_TYPE)
                 .header("Authorization", "Bearer " + token)
-                .post(Entity.entity(os.toByteArray(), "multipart/mixed; boundary=frontier"));
+                .property(BackendMetrics.ENDPOINT, "assets.upload");
+    }
 
+    private static AssetKey readAssetKey(Response response) throws IOException {
         if (response.getStatus() >= 300) {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
@@ -214,14 +278,28 @@ public class API extends LoginClient {
     }
 
     Conversation getConversation() throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = BackendMetrics.invoke("conversation", () -> conversation().get());
+
+        return readConversation(response);
+    }
+
+    CompletableFuture<Conversation> getConversationAsync() {
+        ResponseFuture<Conversation> ret = new ResponseFuture<>("conversation", API::readConversation);
+        conversation().async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder conversation() {
+        return Transport.client().target(httpUrl).
                 path("conversations").
                 path(convId).
                 request().
                 header("Authorization", "Bearer " + token).
-                accept(MediaType.APPLICATION_JSON).
-                get();
+                property(BackendMetrics.ENDPOINT, "conversation").
+                accept(MediaType.APPLICATION_JSON);
+    }
 
+    private static Conversation readConversation(Response response) throws IOException {
         if (response.getStatus() >= 300) {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
@@ -237,7 +315,7 @@ public class API extends LoginClient {
     }
 
     public Conversation createConversation(String name) throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("conversations").
                 request().
                 header("Authorization", "Bearer " + token).
@@ -260,7 +338,7 @@ public class API extends LoginClient {
     }
 
     public void deleteConversation(String teamId) throws IOException {
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("teams").
                 path(teamId).
                 path("conversations").
@@ -274,6 +352,7 @@ public class API extends LoginClient {
             Logger.warning(response.readEntity(String.class));
             throw new IOException(response.getStatusInfo().getReasonPhrase());
         }
+        response.close();
     }
 
     class _Service {
@@ -286,7 +365,7 @@ public class API extends LoginClient {
         service.service = serviceId;
         service.provider = providerId;
 
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("conversations").
                 path(convId).
                 path("bots").
@@ -308,33 +387,61 @@ public class API extends LoginClient {
     }
 
     Collection<com.wire.bots.sdk.server.model.User> getUsers(Collection<String> ids) throws IOException {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("users", () -> users(ids).
+                get(new GenericType<ArrayList<com.wire.bots.sdk.server.model.User>>() {
+                }));
+    }
+
+    CompletableFuture<Collection<com.wire.bots.sdk.server.model.User>> getUsersAsync(Collection<String> ids) {
+        ResponseFuture.Reader<Collection<com.wire.bots.sdk.server.model.User>> reader = response -> {
+            if (response.getStatus() >= 300)
+                throw new IOException("getUsers: " + response.readEntity(String.class));
+            return response.readEntity(new GenericType<ArrayList<com.wire.bots.sdk.server.model.User>>() {
+            });
+        };
+        ResponseFuture<Collection<com.wire.bots.sdk.server.model.User>> ret = new ResponseFuture<>("users", reader);
+        users(ids).async().get(ret);
+        return ret;
+    }
+
+    private Invocation.Builder users(Collection<String> ids) {
+        return Transport.client().target(httpUrl).
                 path("users").
                 queryParam("ids", String.join(",", ids)).
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
-                get(new GenericType<ArrayList<com.wire.bots.sdk.server.model.User>>() {
-                });
+                property(BackendMetrics.ENDPOINT, "users");
     }
 
-    void uploadPreKeys(ArrayList<PreKey> preKeys) {
-        client.target(httpUrl).
+    void uploadPreKeys(ArrayList<PreKey> preKeys) throws IOException {
+        Response response = BackendMetrics.invoke("prekeys.upload", () -> Transport.client().target(httpUrl).
                 path("users/prekeys").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
+                property(BackendMetrics.ENDPOINT, "prekeys.upload").
                 accept(MediaType.APPLICATION_JSON).
-                post(Entity.entity(preKeys, MediaType.APPLICATION_JSON));
+                post(Entity.entity(preKeys, MediaType.APPLICATION_JSON)));
+
+        int statusCode = response.getStatus();
+        if (statusCode >= 300) {
+            String log = String.format("uploadPreKeys: %s code: %d",
+                    response.readEntity(String.class),
+                    statusCode);
+            throw new IOException(log);
+        }
+        response.close();
     }
 
     ArrayList<Integer> getAvailablePrekeys(String clientId) {
-        return client.target(httpUrl).
+        return BackendMetrics.invoke("prekeys.available", () -> Transport.client().target(httpUrl).
                 path("clients").
                 path(clientId).
                 path("prekeys").
                 request().
                 header("Authorization", "Bearer " + token).
+                property(BackendMetrics.ENDPOINT, "prekeys.available").
                 accept(MediaType.APPLICATION_JSON).
                 get(new GenericType<ArrayList<Integer>>() {
-                });
+                }));
     }
 }
@@ -0,0 +1,77 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+package com.wire.bots.sdk.user;
+
+import com.wire.bots.sdk.AssetCache;
+import com.wire.bots.sdk.AsyncWireClientBase;
+import com.wire.bots.sdk.UploadCache;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.assets.IAsset;
+import com.wire.bots.sdk.assets.IGeneric;
+import com.wire.bots.sdk.models.AssetKey;
+import com.wire.bots.sdk.server.model.Conversation;
+import com.wire.bots.sdk.server.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Async client when running the sdk as a regular user. Shares the sessions with the UserClient it was created from
+ */
+class AsyncUserClient extends AsyncWireClientBase {
+    private final UserClient client;
+    private final API api;
+
+    AsyncUserClient(UserClient client, API api, AssetCache assets, UploadCache uploads, Executor executor) {
+        super(executor, assets, uploads);
+        this.client = client;
+        this.api = api;
+    }
+
+    @Override
+    public CompletableFuture<Void> send(IGeneric generic) {
+        return client.postGenericMessageAsync(generic, executor);
+    }
+
+    @Override
+    public CompletableFuture<AssetKey> uploadAsset(IAsset asset) {
+        return api.uploadAssetAsync(asset);
+    }
+
+    @Override
+    protected CompletableFuture<byte[]> downloadCipher(String assetKey, String assetToken) {
+        return api.downloadAssetAsync(assetKey, assetToken);
+    }
+
+    @Override
+    public CompletableFuture<Collection<User>> getUsers(Collection<String> userIds) {
+        return api.getUsersAsync(userIds);
+    }
+
+    @Override
+    public CompletableFuture<Conversation> getConversation() {
+        return api.getConversationAsync();
+    }
+
+    @Override
+    public WireClient getWireClient() {
+        return client;
+    }
+}
@@ -26,6 +26,9 @@ import com.wire.bots.sdk.Util;
 import com.wire.bots.sdk.models.otr.PreKey;
 import com.wire.bots.sdk.server.model.InboundMessage;
 import com.wire.bots.sdk.server.resources.MessageResource;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.BotStorage;
+import com.wire.bots.sdk.storage.FileBotStorage;
 import com.wire.bots.sdk.user.model.Message;
 import com.wire.bots.sdk.user.model.User;
 import com.wire.cryptobox.CryptoException;
@@ -47,11 +50,10 @@ import java.util.concurrent.TimeUnit;
 public class Endpoint {
     private static final String WSS = "wss://%s-nginz-ssl.%s/await?access_token=%s&client=%s";
     private static final String PROD = "prod";
-    private static final String CLIENT_ID = "client.id";
-    private static final String TOKEN_ID = "token.id";
     private static final String ENV = "env";
     private MessageResource messageResource;
     private final Configuration config;
+    private final BotStorage storage;
     private ClientManager client = null;
     private String token;
     private String cookie;
@@ -59,7 +61,16 @@ public class Endpoint {
     private String botId;
 
     public Endpoint(Configuration config) throws CryptoException {
+        this(config, new FileBotStorage(config.getCryptoDir()));
+    }
+
+    /**
+     * @param config  Configuration
+     * @param storage Where the client id and the access token are kept. Must be the storage of the ClientRepo
+     */
+    public Endpoint(Configuration config, BotStorage storage) throws CryptoException {
         this.config = config;
+        this.storage = storage;
     }
 
     public Session connectWebSocket(MessageResource messageResource) throws Exception {
@@ -129,31 +140,31 @@ public class Endpoint {
         return new URI(url);
     }
 
-    private static String initDevice(String dataDir, String password, String token)
+    private String initDevice(String dataDir, String password, String token)
             throws Exception {
         File base = new File(dataDir);
         if (base.mkdirs())
             Logger.info("Created: " + dataDir);
 
-        File clientIdFile = new File(String.format("%s/%s", base.getAbsolutePath(), CLIENT_ID));
-
-        File tokenFile = new File(String.format("%s/%s", base.getAbsolutePath(), TOKEN_ID));
-        Util.writeLine(token, tokenFile);
+        BotState old = storage.get(botId);
+        BotState state = old != null ? old.copy() : new BotState();
+        state.id = botId;
+        state.token = token;
 
-        if (clientIdFile.exists()) {
-            String clientId = Util.readLine(clientIdFile);
-            Logger.info("initDevice: Existing ClientID: %s", clientId);
-            return clientId;
+        if (state.client != null) {
+            storage.save(state);
+            Logger.info("initDevice: Existing ClientID: %s", state.client);
+            return state.client;
         }
 
         // register new device
         try (OtrManager otrManager = new OtrManager(base.getAbsolutePath())) {
             PreKey key = otrManager.newLastPreKey();
             LoginClient login = new LoginClient();
-            String clientId = login.registerClient(key, token, password);
-            Util.writeLine(clientId, clientIdFile);
-            Logger.info("initDevice: New ClientID: %s", clientId);
-            return clientId;
+            state.client = login.registerClient(key, token, password);
+            storage.save(state);
+            Logger.info("initDevice: New ClientID: %s", state.client);
+            return state.client;
         }
     }
 
@@ -163,8 +174,9 @@ public class Endpoint {
             public void run() {
                 try {
                     token = API.renewAccessToken(cookie, token);
-                    File tokenFile = new File(String.format("%s/%s/%s", config.getCryptoDir(), botId, TOKEN_ID));
-                    Util.writeLine(token, tokenFile);
+                    BotState state = storage.get(botId).copy();
+                    state.token = token;
+                    storage.save(state);
                 } catch (Exception e) {
                     Logger.warning("Failed periodic access_token renewal: " + e.getMessage());
                     e.printStackTrace();
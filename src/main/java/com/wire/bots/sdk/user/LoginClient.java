@@ -19,17 +19,14 @@
 package com.wire.bots.sdk.user;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 import com.wire.bots.sdk.Logger;
+import com.wire.bots.sdk.Transport;
 import com.wire.bots.sdk.Util;
 import com.wire.bots.sdk.models.otr.PreKey;
 import com.wire.bots.sdk.server.model.Member;
 import com.wire.bots.sdk.user.model.NewClient;
 import com.wire.bots.sdk.user.model.User;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.JerseyClientBuilder;
 
-import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -37,15 +34,11 @@ import java.io.IOException;
 import java.util.Base64;
 
 public class LoginClient {
-    protected final static Client client;
     final static String httpUrl;
 
     static {
         String env = System.getProperty("env", "prod");
         httpUrl = String.format("https://%s-nginz-https.%s", env, Util.getDomain());
-
-        ClientConfig cfg = new ClientConfig(JacksonJsonProvider.class);
-        client = JerseyClientBuilder.createClient(cfg);
     }
 
     User login(String email, String password) throws IOException {
@@ -53,7 +46,7 @@ public class LoginClient {
         login.setEmail(email);
         login.setPassword(password);
 
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("login").
                 queryParam("persist", true).
                 request(MediaType.APPLICATION_JSON).
@@ -80,7 +73,7 @@ public class LoginClient {
         newClient.label = "wbotz";
         newClient.type = "permanent";
 
-        Response response = client.target(httpUrl).
+        Response response = Transport.client().target(httpUrl).
                 path("clients").
                 request(MediaType.APPLICATION_JSON).
                 header("Authorization", "Bearer " + token).
@@ -100,7 +93,7 @@ public class LoginClient {
     }
 
     public String newConversation(String token, String name) throws IOException {
-        Response response = client.target(httpUrl)
+        Response response = Transport.client().target(httpUrl)
                 .path("conversations")
                 .request(MediaType.APPLICATION_JSON)
                 .header("Authorization", "Bearer " + token)
@@ -118,7 +111,7 @@ public class LoginClient {
     public boolean addService(String token, String convId, String provider, String service) throws IOException {
         String json = String.format("{ \"provider\":\"%s\", \"service\":\"%s\" }", provider, service);
 
-        Response response = client.target(httpUrl)
+        Response response = Transport.client().target(httpUrl)
                 .path("conversations")
                 .path(convId)
                 .path("bots")
@@ -126,12 +119,13 @@ public class LoginClient {
                 .header("Authorization", "Bearer " + token)
                 .post(Entity.entity(json, MediaType.APPLICATION_JSON));
 
-        if (response.getStatus() > 300) {
-            String msg = String.format("addService: %s, code: %s", response.readEntity(String.class)
-                    , response.getStatus());
+        int status = response.getStatus();
+        if (status > 300) {
+            String msg = String.format("addService: %s, code: %s", response.readEntity(String.class), status);
             Logger.warning(msg);
             throw new IOException(msg);
         }
-        return response.getStatus() == 201;
+        response.close();
+        return status == 201;
     }
 }
@@ -18,9 +18,12 @@
 
 package com.wire.bots.sdk.user;
 
-import com.waz.model.Messages;
+import com.wire.bots.sdk.AssetCache;
+import com.wire.bots.sdk.AsyncWireClient;
+import com.wire.bots.sdk.DecryptingInputStream;
 import com.wire.bots.sdk.Logger;
 import com.wire.bots.sdk.OtrManager;
+import com.wire.bots.sdk.UploadCache;
 import com.wire.bots.sdk.Util;
 import com.wire.bots.sdk.WireClient;
 import com.wire.bots.sdk.assets.*;
@@ -31,11 +34,12 @@ import com.wire.bots.sdk.server.model.User;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class UserClient implements WireClient {
     private final String botId;
@@ -43,14 +47,23 @@ public class UserClient implements WireClient {
     private final String clientId;
     private final API api;
     private final OtrManager otrManager;
+    private final UploadCache uploads;
+    private final AssetCache assets;
     private Devices devices;
 
     public UserClient(OtrManager otrManager, String botId, String convId, String clientId, String token) {
+        this(otrManager, botId, convId, clientId, token, UploadCache.disabled(), AssetCache.disabled());
+    }
+
+    public UserClient(OtrManager otrManager, String botId, String convId, String clientId, String token,
+                      UploadCache uploads, AssetCache assets) {
         this.botId = botId;
         this.convId = convId;
         this.clientId = clientId;
         this.api = new API(convId, token);
         this.otrManager = otrManager;
+        this.uploads = uploads;
+        this.assets = assets;
     }
 
     @Override
@@ -83,9 +96,8 @@ public class UserClient implements WireClient {
     public void sendPicture(byte[] bytes, String mimeType) throws Exception {
         Picture image = new Picture(bytes, mimeType);
 
-        AssetKey assetKey = uploadAsset(image);
-        image.setAssetKey(assetKey.key);
-        image.setAssetToken(assetKey.token);
+        // reuses the remote asset if the same picture was uploaded recently
+        uploads.upload(image, this::uploadAsset);
 
         postGenericMessage(image);
     }
@@ -95,6 +107,11 @@ public class UserClient implements WireClient {
         return api.uploadAsset(asset);
     }
 
+    @Override
+    public AsyncWireClient async(Executor executor) {
+        return new AsyncUserClient(this, api, assets, uploads, executor);
+    }
+
     @Override
     public void sendPicture(IGeneric image) throws Exception {
         postGenericMessage(image);
@@ -140,15 +157,18 @@ public class UserClient implements WireClient {
 
         FileAsset asset = new FileAsset(assetPreview);
 
-        // upload asset to backend
-        AssetKey assetKey = api.uploadAsset(asset);
-        asset.setAssetKey(assetKey.key);
-        asset.setAssetToken(assetKey.token);
+        // upload asset to backend unless the same file was uploaded recently
+        uploads.upload(asset, this::uploadAsset);
 
         // post original + remote asset message
         postGenericMessage(asset);
     }
 
+    @Override
+    public void send(IGeneric generic) throws Exception {
+        postGenericMessage(generic);
+    }
+
     @Override
     public void ping() throws Exception {
         postGenericMessage(new Ping());
@@ -172,12 +192,23 @@ public class UserClient implements WireClient {
     @Override
     public byte[] downloadAsset(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey)
             throws Exception {
-        byte[] cipher = api.downloadAsset(assetKey, assetToken);
-        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(cipher);
-        if (!Arrays.equals(sha256, sha256Challenge))
-            throw new Exception("Failed sha256 check");
+        return assets.get(assetKey, sha256Challenge, () -> {
+            InputStream cipher = api.downloadAssetStream(assetKey, assetToken);
+            try (InputStream in = new DecryptingInputStream(cipher, otrKey, sha256Challenge)) {
+                return Util.toByteArray(in);
+            }
+        });
+    }
+
+    @Override
+    public InputStream downloadAssetStream(String assetKey, String assetToken, byte[] sha256Challenge, byte[] otrKey)
+            throws Exception {
+        InputStream cached = assets.open(assetKey, sha256Challenge);
+        if (cached != null)
+            return cached;
 
-        return Util.decrypt(otrKey, cipher);
+        InputStream cipher = api.downloadAssetStream(assetKey, assetToken);
+        return new DecryptingInputStream(cipher, otrKey, sha256Challenge);
     }
 
     @Override
@@ -211,8 +242,7 @@ public class UserClient implements WireClient {
     }
 
     private void postGenericMessage(IGeneric generic) throws Exception {
-        Messages.GenericMessage genMsg = generic.createGenericMsg();
-        OtrMessage msg = new OtrMessage(clientId, genMsg.toByteArray());
+        OtrMessage msg = new OtrMessage(clientId, PreparedMessage.payload(generic));
         
         Recipients encrypt = otrManager.encrypt(getDevices().missing, msg.getContent());
         msg.add(encrypt);
@@ -241,6 +271,40 @@ public class UserClient implements WireClient {
         }
     }
 
+    /**
+     * Non-blocking version of {@link #postGenericMessage}. Encryption runs on the executor, Backend calls are async
+     *
+     * @param generic  generic message to be sent
+     * @param executor Executor for the encryption
+     * @return Future completed once the message has been posted
+     */
+    CompletableFuture<Void> postGenericMessageAsync(IGeneric generic, Executor executor) {
+        return api.sendMessageAsync(new OtrMessage(clientId), false)
+                .thenCompose(devices -> Util.supplyAsync(() -> {
+                    OtrMessage msg = new OtrMessage(clientId, PreparedMessage.payload(generic));
+                    msg.add(otrManager.encrypt(devices.missing, msg.getContent()));
+                    return msg;
+                }, executor))
+                .thenCompose(msg -> api.sendMessageAsync(msg, false).thenCompose(res -> {
+                    if (res.hasMissing())
+                        return CompletableFuture.<Void>completedFuture(null);
+
+                    return api.getPreKeysAsync(res.missing)
+                            .thenCompose(preKeys -> Util.supplyAsync(() -> {
+                                msg.add(otrManager.encrypt(preKeys, msg.getContent()));
+                                return msg;
+                            }, executor))
+                            .thenCompose(m -> api.sendMessageAsync(m, true))
+                            .thenAccept(r -> {
+                                if (!r.hasMissing()) {
+                                    Logger.error(String.format("Failed to send otr message to %d devices. Conv: %s",
+                                            r.size(),
+                                            convId));
+                                }
+                            });
+                }));
+    }
+
     private Devices getDevices() {
         try {
             if (devices == null || devices.hasMissing()) {
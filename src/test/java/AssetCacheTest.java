@@ -0,0 +1,122 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.AssetCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AssetCacheTest {
+    private static final byte[] SHA256 = new byte[32];
+
+    @Test
+    public void testHeapAndDiskTiers() throws Exception {
+        File dir = Files.createTempDirectory("assets").toFile();
+        AtomicInteger downloads = new AtomicInteger();
+
+        AssetCache cache = new AssetCache(1024, dir.getAbsolutePath(), 10 * 1024);
+        byte[] first = cache.get("3-1-a", SHA256, () -> content(downloads, 100));
+        byte[] second = cache.get("3-1-a", SHA256, () -> content(downloads, 100));
+        assert downloads.get() == 1;
+        assert Arrays.equals(first, second);
+
+        // too big for the heap, served from disk
+        cache.get("3-1-b", SHA256, () -> content(downloads, 2048));
+        cache.get("3-1-b", SHA256, () -> content(downloads, 2048));
+        assert downloads.get() == 2;
+
+        // different sha256 is a different asset
+        cache.get("3-1-a", new byte[]{1}, () -> content(downloads, 100));
+        assert downloads.get() == 3;
+
+        // disk tier survives restarts
+        cache = new AssetCache(0, dir.getAbsolutePath(), 10 * 1024);
+        try (InputStream in = cache.open("3-1-b", SHA256)) {
+            assert in != null;
+        }
+        assert cache.open("3-1-c", SHA256) == null;
+    }
+
+    @Test
+    public void testDiskEviction() throws Exception {
+        File dir = Files.createTempDirectory("assets").toFile();
+        AtomicInteger downloads = new AtomicInteger();
+
+        AssetCache cache = new AssetCache(0, dir.getAbsolutePath(), 3000);
+        cache.get("3-1-a", SHA256, () -> content(downloads, 1000));
+        cache.get("3-1-b", SHA256, () -> content(downloads, 1000));
+        cache.get("3-1-a", SHA256, () -> content(downloads, 1000));
+        cache.get("3-1-c", SHA256, () -> content(downloads, 1500));
+        assert downloads.get() == 3;
+
+        // b was the least recently used
+        assert cache.open("3-1-b", SHA256) == null;
+        cache.open("3-1-a", SHA256).close();
+        cache.open("3-1-c", SHA256).close();
+        assert dir.list().length == 2;
+    }
+
+    @Test
+    public void testPutAndGetIfPresent() throws Exception {
+        File dir = Files.createTempDirectory("assets").toFile();
+        AtomicInteger downloads = new AtomicInteger();
+
+        AssetCache cache = new AssetCache(1024, dir.getAbsolutePath(), 10 * 1024);
+        assert cache.getIfPresent("3-1-a", SHA256) == null;
+
+        byte[] data = content(downloads, 100);
+        cache.put("3-1-a", SHA256, data);
+        byte[] cached = cache.getIfPresent("3-1-a", SHA256);
+        assert cached != data && Arrays.equals(cached, data);
+
+        // shared with the blocking path
+        cache.get("3-1-a", SHA256, () -> content(downloads, 100));
+        assert downloads.get() == 1;
+
+        // from disk after a restart
+        cache = new AssetCache(1024, dir.getAbsolutePath(), 10 * 1024);
+        assert Arrays.equals(cache.getIfPresent("3-1-a", SHA256), data);
+        assert cache.getIfPresent("3-1-a", new byte[]{1}) == null;
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        AtomicInteger downloads = new AtomicInteger();
+        AssetCache cache = AssetCache.disabled();
+        cache.get("3-1-a", SHA256, () -> content(downloads, 10));
+        cache.get("3-1-a", SHA256, () -> content(downloads, 10));
+        assert downloads.get() == 2;
+        assert cache.open("3-1-a", SHA256) == null;
+
+        cache.put("3-1-a", SHA256, new byte[10]);
+        assert cache.getIfPresent("3-1-a", SHA256) == null;
+    }
+
+    private static byte[] content(AtomicInteger downloads, int size) {
+        downloads.incrementAndGet();
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) size);
+        return data;
+    }
+}
@@ -0,0 +1,50 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.codahale.metrics.MetricRegistry;
+import com.wire.bots.sdk.BackendMetrics;
+import com.wire.bots.sdk.ResponseFuture;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+
+public class BackendMetricsTest {
+
+    @Test
+    public void testErrors() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        BackendMetrics.register(metrics);
+
+        assert BackendMetrics.invoke("users", () -> "ok").equals("ok");
+        try {
+            BackendMetrics.invoke("users", () -> {
+                throw new ProcessingException("connect timed out");
+            });
+            assert false;
+        } catch (ProcessingException ignore) {
+        }
+        assert metrics.meter("backend.users.errors").getCount() == 1;
+
+        ResponseFuture<String> future = new ResponseFuture<>("messages", response -> "ok");
+        future.failed(new ProcessingException("read timed out"));
+        assert future.isCompletedExceptionally();
+        assert metrics.meter("backend.messages.errors").getCount() == 1;
+        assert metrics.meter("backend.users.errors").getCount() == 1;
+    }
+}
@@ -0,0 +1,246 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.wire.bots.sdk.AsyncWireClient;
+import com.wire.bots.sdk.ClientRepo;
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.broadcast.BroadcastJob;
+import com.wire.bots.sdk.broadcast.Broadcaster;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BroadcasterTest {
+    private static final List<String> BOTS = Arrays.asList("bot1", "bot2", "bot3", "bot4", "bot5");
+
+    @Test
+    public void testResumeAfterStop() throws Exception {
+        String dir = Files.createTempDirectory("broadcast").toString();
+        try (Fixture fixture = new Fixture(dir)) {
+            // one message in flight: stop while it is being sent
+            Broadcaster broadcaster = fixture.broadcaster(1);
+            fixture.hold = true;
+            BroadcastJob job = broadcaster.broadcast("Hello", BOTS);
+            CompletableFuture<Void> first = fixture.held.poll(10, TimeUnit.SECONDS);
+            assert first != null;
+            broadcaster.stop();
+            first.complete(null);
+
+            assert job.await(10, TimeUnit.SECONDS);
+            assert job.getState() == BroadcastJob.State.SUSPENDED;
+            assert job.getSent() == 1;
+
+            // read back while nobody dispatches it: waiting returns right away
+            Broadcaster restarted = fixture.broadcaster(1);
+            BroadcastJob suspended = restarted.get(job.getId());
+            assert suspended.getState() == BroadcastJob.State.SUSPENDED;
+            assert suspended.await(0, TimeUnit.SECONDS);
+
+            restarted.start();
+            BroadcastJob resumed = restarted.get(job.getId());
+            assert resumed.await(10, TimeUnit.SECONDS);
+            assert resumed.getState() == BroadcastJob.State.DONE;
+            assert resumed.getSent() == BOTS.size();
+            for (String botId : BOTS)
+                assert fixture.count(botId) == 1 : botId;
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        String dir = Files.createTempDirectory("broadcast").toString();
+        try (Fixture fixture = new Fixture(dir)) {
+            Broadcaster broadcaster = fixture.broadcaster(1);
+            fixture.hold = true;
+            BroadcastJob running = broadcaster.broadcast("Hello", BOTS);
+            CompletableFuture<Void> first = fixture.held.poll(10, TimeUnit.SECONDS);
+            assert first != null;
+            running.cancel();
+            first.complete(null);
+
+            // the dispatcher may have passed the check for the next target already
+            assert running.await(10, TimeUnit.SECONDS);
+            assert running.getState() == BroadcastJob.State.CANCELLED;
+            assert running.getSent() < BOTS.size();
+            broadcaster.stop();
+
+            // a suspended job that is cancelled is not resumed
+            broadcaster = fixture.broadcaster(1);
+            fixture.hold = true;
+            BroadcastJob stopped = broadcaster.broadcast("Bye", BOTS);
+            first = fixture.held.poll(10, TimeUnit.SECONDS);
+            assert first != null;
+            broadcaster.stop();
+            first.complete(null);
+            assert stopped.await(10, TimeUnit.SECONDS);
+            assert stopped.getState() == BroadcastJob.State.SUSPENDED;
+
+            Broadcaster restarted = fixture.broadcaster(1);
+            restarted.get(stopped.getId()).cancel();
+            restarted.start();
+            assert restarted.getRunning().isEmpty();
+            BroadcastJob cancelled = restarted.get(stopped.getId());
+            assert cancelled.getState() == BroadcastJob.State.CANCELLED;
+            assert cancelled.getSent() == 1;
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void testBotOverItsLimitIsRetried() throws Exception {
+        String dir = Files.createTempDirectory("broadcast").toString();
+        try (Fixture fixture = new Fixture(dir)) {
+            // 10 messages per second per bot: the second and third message to bot1 are retried later
+            Configuration.Broadcast conf = new Configuration.Broadcast();
+            conf.botRatePerMinute = 600;
+            Broadcaster broadcaster = new Broadcaster(fixture.repo, dir, conf, fixture.workers);
+            BroadcastJob job = broadcaster.broadcast("Hello", Arrays.asList("bot1", "bot1", "unknown", "bot1", "bot2"));
+
+            assert job.await(10, TimeUnit.SECONDS);
+            assert job.getState() == BroadcastJob.State.DONE;
+            assert job.getSent() == 4;
+            assert job.getFailed() == 1;
+            assert fixture.count("bot1") == 3;
+            assert fixture.count("bot2") == 1;
+            broadcaster.stop();
+        }
+    }
+
+    @Test
+    public void testBrokenJobFails() throws Exception {
+        String dir = Files.createTempDirectory("broadcast").toString();
+        try (Fixture fixture = new Fixture(dir)) {
+            // the message cannot be built
+            Broadcaster broadcaster = fixture.broadcaster(10);
+            BroadcastJob job = broadcaster.broadcast(null, BOTS);
+            assert job.await(10, TimeUnit.SECONDS);
+            assert job.getState() == BroadcastJob.State.FAILED;
+
+            Broadcaster restarted = fixture.broadcaster(10);
+            restarted.start();
+            assert restarted.getRunning().isEmpty();
+            assert restarted.get(job.getId()).getState() == BroadcastJob.State.FAILED;
+            assert fixture.count("bot1") == 0;
+            restarted.stop();
+        }
+    }
+
+    private static class Fixture implements AutoCloseable {
+        final ConcurrentHashMap<String, AtomicInteger> received = new ConcurrentHashMap<>();
+        final LinkedBlockingQueue<CompletableFuture<Void>> held = new LinkedBlockingQueue<>();
+        final ExecutorService workers = Executors.newFixedThreadPool(4);
+        final String dir;
+        final ClientRepo repo;
+        // the next message is held until the test completes it, the others are sent right away
+        volatile boolean hold;
+
+        Fixture(String dir) throws Exception {
+            this.dir = dir;
+            LogBotStorage storage = new LogBotStorage(dir);
+            for (String botId : BOTS)
+                storage.save(newState(botId));
+            repo = new ClientRepo((botId, convId, clientId, token) -> newClient(botId), dir, Runnable::run,
+                    new Configuration.Clients(), storage);
+        }
+
+        @Override
+        public void close() {
+            workers.shutdownNow();
+        }
+
+        Broadcaster broadcaster(int inflight) {
+            Configuration.Broadcast conf = new Configuration.Broadcast();
+            conf.inflight = inflight;
+            conf.checkpointMillis = 100;
+            return new Broadcaster(repo, dir, conf, workers);
+        }
+
+        CompletableFuture<Void> send(String botId) {
+            received.computeIfAbsent(botId, id -> new AtomicInteger()).incrementAndGet();
+            if (!hold)
+                return CompletableFuture.completedFuture(null);
+
+            hold = false;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            held.add(future);
+            return future;
+        }
+
+        int count(String botId) {
+            AtomicInteger count = received.get(botId);
+            return count != null ? count.get() : 0;
+        }
+
+        WireClient newClient(String botId) {
+            AsyncWireClient async = (AsyncWireClient) Proxy.newProxyInstance(AsyncWireClient.class.getClassLoader(),
+                    new Class[]{AsyncWireClient.class},
+                    (proxy, method, args) -> {
+                        if (!method.getName().equals("send"))
+                            throw new UnsupportedOperationException(method.getName());
+                        return send(botId);
+                    });
+
+            return (WireClient) Proxy.newProxyInstance(WireClient.class.getClassLoader(),
+                    new Class[]{WireClient.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getId":
+                            case "toString":
+                                return botId;
+                            case "async":
+                                return async;
+                            case "isClosed":
+                                return false;
+                            case "close":
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    private static BotState newState(String botId) {
+        BotState state = new BotState();
+        state.id = botId;
+        state.client = "client";
+        state.token = "token";
+        state.conversation = "conv";
+        state.locale = "en";
+        return state;
+    }
+}
@@ -0,0 +1,248 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.ClientRepo;
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ClientRepoTest {
+
+    @Test
+    public void testLeasedClientIsNotClosed() throws Exception {
+        String dir = Files.createTempDirectory("repo").toString();
+        LogBotStorage storage = new LogBotStorage(dir);
+        storage.save(newState("bot1"));
+        AtomicInteger opened = new AtomicInteger();
+
+        // closing runs on the calling thread
+        ClientRepo repo = new ClientRepo((botId, convId, clientId, token) -> {
+            opened.incrementAndGet();
+            return newClient(botId);
+        }, dir, Runnable::run, new Configuration.Clients(), storage);
+
+        ClientRepo.Lease lease = repo.acquire("bot1");
+        WireClient client = lease.getClient();
+
+        // evicted while leased: stays open and is handed out again
+        repo.removeClient("bot1");
+        assert !client.isClosed();
+        assert repo.getWireClient("bot1") == client;
+        assert opened.get() == 1;
+
+        // evicted again, closed once the lease is released
+        repo.removeClient("bot1");
+        assert !client.isClosed();
+        lease.close();
+        assert client.isClosed();
+        lease.close();
+
+        WireClient reopened = repo.getWireClient("bot1");
+        assert reopened != client;
+        assert opened.get() == 2;
+
+        // not leased: closed right away
+        repo.removeClient("bot1");
+        assert reopened.isClosed();
+
+        assert repo.acquire("bot2") == null;
+        repo.close();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        String dir = Files.createTempDirectory("repo").toString();
+        LogBotStorage storage = new LogBotStorage(dir);
+        for (String botId : new String[]{"bot1", "bot2", "bot3"})
+            storage.save(newState(botId));
+
+        Configuration.Clients conf = new Configuration.Clients();
+        conf.maxSize = 2;
+        conf.idleSeconds = 1;
+        ClientRepo repo = new ClientRepo((botId, convId, clientId, token) -> newClient(botId),
+                dir, Runnable::run, conf, storage);
+
+        WireClient bot1 = repo.getWireClient("bot1");
+        WireClient bot2 = repo.getWireClient("bot2");
+        assert repo.getWireClient("bot1") == bot1;
+        WireClient bot3 = repo.getWireClient("bot3");
+
+        // bot2 was the least recently used
+        assert bot2.isClosed();
+        assert !bot1.isClosed();
+        assert !bot3.isClosed();
+
+        // idle clients are closed on the next write
+        Thread.sleep(1500);
+        WireClient reopened = repo.getWireClient("bot2");
+        assert reopened != bot2 && !reopened.isClosed();
+        assert bot1.isClosed();
+        assert bot3.isClosed();
+        repo.close();
+        assert reopened.isClosed();
+    }
+
+    @Test
+    public void testNotOpenedTwiceWhileRemoved() throws Exception {
+        String dir = Files.createTempDirectory("repo").toString();
+        LogBotStorage storage = new LogBotStorage(dir);
+        storage.save(newState("bot1"));
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger opened = new AtomicInteger();
+        AtomicBoolean twice = new AtomicBoolean();
+
+        ClientRepo repo = new ClientRepo((botId, convId, clientId, token) -> {
+            opened.incrementAndGet();
+            if (open.incrementAndGet() > 1)
+                twice.set(true);
+            return newClient(botId, open::decrementAndGet);
+        }, dir, Runnable::run, new Configuration.Clients(), storage);
+        WireClient first = repo.getWireClient("bot1");
+
+        // hold the repo lock: the entry is removed from the cache but the removal notification cannot be handled
+        Field field = ClientRepo.class.getDeclaredField("pins");
+        field.setAccessible(true);
+        Object pins = field.get(repo);
+
+        AtomicReference<WireClient> loaded = new AtomicReference<>();
+        Thread remover = new Thread(() -> repo.removeClient("bot1"));
+        Thread loader = new Thread(() -> loaded.set(repo.getWireClient("bot1")));
+        synchronized (pins) {
+            remover.start();
+            waitForState(remover, Thread.State.BLOCKED);
+            loader.start();
+            waitForState(loader, Thread.State.BLOCKED);
+        }
+        remover.join();
+        loader.join();
+
+        assert !twice.get();
+        assert opened.get() == 2;
+        assert first.isClosed();
+        assert loaded.get() != first && !loaded.get().isClosed();
+        repo.close();
+    }
+
+    @Test
+    public void testConcurrentLoads() throws Exception {
+        String dir = Files.createTempDirectory("repo").toString();
+        LogBotStorage storage = new LogBotStorage(dir);
+        storage.save(newState("bot1"));
+        storage.save(newState("bot2"));
+        AtomicInteger opened = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // bot1 loads until the test releases it
+        ClientRepo repo = new ClientRepo((botId, convId, clientId, token) -> {
+            if (botId.equals("bot1")) {
+                opened.incrementAndGet();
+                loading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return newClient(botId);
+        }, dir, Runnable::run, new Configuration.Clients(), storage);
+
+        WireClient[] loaded = new WireClient[8];
+        Thread[] threads = new Thread[loaded.length];
+        for (int i = 0; i < threads.length; i++) {
+            int n = i;
+            threads[i] = new Thread(() -> loaded[n] = repo.getWireClient("bot1"));
+            threads[i].start();
+        }
+        // one thread loads the client, the others wait for its load
+        assert loading.await(10, TimeUnit.SECONDS);
+        for (Thread thread : threads) {
+            if (thread.getState() != Thread.State.TIMED_WAITING)
+                waitForState(thread, Thread.State.WAITING);
+        }
+
+        // another bot is not blocked by the load in progress
+        WireClient bot2 = repo.getWireClient("bot2");
+        assert bot2 != null && !bot2.isClosed();
+        assert release.getCount() == 1;
+
+        release.countDown();
+        for (Thread thread : threads)
+            thread.join();
+
+        assert opened.get() == 1;
+        for (WireClient client : loaded)
+            assert client != null && client == loaded[0];
+        repo.close();
+    }
+
+    private static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+        for (int i = 0; i < 500 && thread.getState() != state; i++)
+            Thread.sleep(10);
+        assert thread.getState() == state;
+    }
+
+    private static WireClient newClient(String botId) {
+        return newClient(botId, () -> {
+        });
+    }
+
+    private static WireClient newClient(String botId, Runnable onClose) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (WireClient) Proxy.newProxyInstance(WireClient.class.getClassLoader(),
+                new Class[]{WireClient.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return botId;
+                        case "isClosed":
+                            return closed.get();
+                        case "close":
+                            if (closed.compareAndSet(false, true))
+                                onClose.run();
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return botId;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static BotState newState(String botId) {
+        BotState state = new BotState();
+        state.id = botId;
+        state.client = "client";
+        state.token = "token";
+        state.conversation = "conv";
+        return state;
+    }
+}
@@ -0,0 +1,86 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.wire.bots.sdk.DecryptingInputStream;
+import com.wire.bots.sdk.Util;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DecryptingInputStreamTest {
+    private static final Random random = new Random();
+
+    @Test
+    public void testDecrypt() throws Exception {
+        for (int size : new int[]{0, 1, 15, 16, 17, 100_000, 1_000_003}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+
+            byte[] cipher = Util.encrypt(key, data, iv);
+            byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(cipher);
+
+            try (InputStream in = new DecryptingInputStream(new ByteArrayInputStream(cipher), key, sha256)) {
+                assert Arrays.equals(Util.toByteArray(in), data);
+            }
+
+            // source that returns a few bytes at a time, splitting the IV and the blocks
+            try (InputStream in = new DecryptingInputStream(new Trickle(cipher), key, sha256)) {
+                assert Arrays.equals(Util.toByteArray(in), data);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedSha256() throws Exception {
+        byte[] data = new byte[10_000];
+        random.nextBytes(data);
+        byte[] key = new byte[32];
+        byte[] cipher = Util.encrypt(key, data, new byte[16]);
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(cipher);
+        sha256[0] ^= 1;
+
+        try (InputStream in = new DecryptingInputStream(new ByteArrayInputStream(cipher), key, sha256)) {
+            Util.toByteArray(in);
+            assert false;
+        } catch (IOException e) {
+            assert e.getMessage().equals("Failed sha256 check");
+        }
+    }
+
+    private static class Trickle extends FilterInputStream {
+        Trickle(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + random.nextInt(7)));
+        }
+    }
+}
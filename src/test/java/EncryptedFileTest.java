@@ -0,0 +1,76 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.Util;
+import com.wire.bots.sdk.assets.EncryptedFile;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+public class EncryptedFileTest {
+    private static final Random random = new Random();
+
+    @Test
+    public void testEncrypt() throws Exception {
+        for (int size : new int[]{0, 1, 16, 64 * 1024, 64 * 1024 + 1, 1_000_003}) {
+            byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            File file = File.createTempFile("asset", ".bin");
+            file.deleteOnExit();
+            Files.write(file.toPath(), plain);
+
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            EncryptedFile encrypted = EncryptedFile.encrypt(file, key);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            encrypted.writeTo(output);
+            byte[] cipher = output.toByteArray();
+
+            assert cipher.length == encrypted.getSize();
+            assert Arrays.equals(MessageDigest.getInstance("SHA-256").digest(cipher), encrypted.getSha256());
+            assert Util.calcMd5(cipher).equals(encrypted.getMd5());
+            assert Arrays.equals(Util.decrypt(key, cipher), plain);
+            assert Arrays.equals(encrypted.getData(), cipher);
+        }
+    }
+
+    @Test
+    public void testFileChanged() throws Exception {
+        File file = File.createTempFile("asset", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[1000]);
+
+        EncryptedFile encrypted = EncryptedFile.encrypt(file, new byte[32]);
+        Files.write(file.toPath(), new byte[1001]);
+        try {
+            encrypted.writeTo(new ByteArrayOutputStream());
+            assert false;
+        } catch (IOException e) {
+            assert e.getMessage().startsWith("File changed");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.assets.ImageProbe;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+public class ImageProbeTest {
+
+    @Test
+    public void testImageIOFormats() throws Exception {
+        for (String format : new String[]{"png", "gif", "jpg", "bmp"}) {
+            BufferedImage image = new BufferedImage(321, 123, BufferedImage.TYPE_INT_RGB);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+
+            Dimension dimension = ImageProbe.dimensions(out.toByteArray());
+            if (format.equals("bmp")) {
+                assert dimension == null;
+            } else {
+                assert dimension != null : format;
+                assert dimension.width == 321 && dimension.height == 123 : format + " " + dimension;
+            }
+        }
+    }
+
+    @Test
+    public void testWebp() {
+        byte[] lossy = webp("VP8 ");
+        lossy[23] = (byte) 0x9D;
+        lossy[24] = 0x01;
+        lossy[25] = 0x2A;
+        lossy[26] = (byte) 0x41;    // 321
+        lossy[27] = 0x01;
+        lossy[28] = 123;
+        assert ImageProbe.dimensions(lossy).equals(new Dimension(321, 123));
+
+        byte[] lossless = webp("VP8L");
+        lossless[20] = 0x2F;
+        int bits = (321 - 1) | (123 - 1) << 14;
+        for (int i = 0; i < 4; i++)
+            lossless[21 + i] = (byte) (bits >>> 8 * i);
+        assert ImageProbe.dimensions(lossless).equals(new Dimension(321, 123));
+
+        byte[] extended = webp("VP8X");
+        extended[24] = (byte) (70000 - 1);
+        extended[25] = (byte) ((70000 - 1) >>> 8);
+        extended[26] = (byte) ((70000 - 1) >>> 16);
+        extended[27] = 122;
+        assert ImageProbe.dimensions(extended).equals(new Dimension(70000, 123));
+    }
+
+    @Test
+    public void testBroken() {
+        assert ImageProbe.dimensions(new byte[0]) == null;
+        assert ImageProbe.dimensions(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x7F}) == null;
+        assert ImageProbe.dimensions(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A}) == null;
+        assert ImageProbe.dimensions("GIF89a".getBytes()) == null;
+    }
+
+    private static byte[] webp(String chunk) {
+        byte[] data = new byte[30];
+        System.arraycopy("RIFF".getBytes(), 0, data, 0, 4);
+        System.arraycopy("WEBP".getBytes(), 0, data, 8, 4);
+        System.arraycopy(chunk.getBytes(), 0, data, 12, 4);
+        return data;
+    }
+}
@@ -0,0 +1,136 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.IndexedBotStorage;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import com.wire.bots.sdk.storage.Segment;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+
+public class IndexedBotStorageTest {
+
+    @Test
+    public void testSelect() throws Exception {
+        String dir = Files.createTempDirectory("index").toString();
+
+        try (IndexedBotStorage storage = new IndexedBotStorage(new LogBotStorage(dir))) {
+            storage.save(newState("bot1", "en", "alice", 1000, 2));
+            storage.save(newState("bot2", "de", "alice", 2000, 10));
+            storage.save(newState("bot3", "de", "bob", 3000, 50));
+            storage.save(newState("bot4", "en", "bob", 0, -1));
+
+            Segment segment = new Segment();
+            segment.locale = "de";
+            assert ids(storage, segment).equals(set("bot2", "bot3"));
+
+            segment.origin = "alice";
+            assert ids(storage, segment).equals(set("bot2"));
+
+            segment = new Segment();
+            segment.createdAfter = 1500L;
+            assert ids(storage, segment).equals(set("bot2", "bot3"));
+            segment.createdBefore = 3000L;
+            assert ids(storage, segment).equals(set("bot2"));
+
+            segment = new Segment();
+            segment.minMembers = 2;
+            segment.maxMembers = 10;
+            assert ids(storage, segment).equals(set("bot1", "bot2"));
+
+            // updates move the bot between the segments
+            BotState update = storage.get("bot1").copy();
+            update.locale = "de";
+            update.members = 20;
+            storage.save(update);
+            assert ids(storage, segment).equals(set("bot2"));
+
+            segment = new Segment();
+            segment.locale = "de";
+            assert ids(storage, segment).equals(set("bot1", "bot2", "bot3"));
+
+            storage.remove("bot2");
+            assert ids(storage, segment).equals(set("bot1", "bot3"));
+        }
+
+        // the index is rebuilt when the storage is opened
+        try (IndexedBotStorage storage = new IndexedBotStorage(new LogBotStorage(dir))) {
+            Segment segment = new Segment();
+            segment.origin = "bob";
+            assert ids(storage, segment).equals(set("bot3", "bot4"));
+
+            segment.maxMembers = 100;
+            assert ids(storage, segment).equals(set("bot3"));
+        }
+    }
+
+    @Test
+    public void testUpdateMembers() throws Exception {
+        String dir = Files.createTempDirectory("index").toString();
+        Segment segment = new Segment();
+        segment.minMembers = 5;
+
+        try (IndexedBotStorage storage = new IndexedBotStorage(new LogBotStorage(dir))) {
+            storage.save(newState("bot1", "en", "alice", 1000, 2));
+            storage.save(newState("bot2", "en", "alice", 1000, -1));
+
+            // in the index right away
+            storage.updateMembers("bot1", 4);
+            storage.updateMembers("bot2", 4);
+            assert ids(storage, segment).equals(set("bot1"));
+            assert storage.get("bot1").members == 6;
+
+            storage.flush();
+            storage.updateMembers("bot1", -3);
+            assert ids(storage, segment).isEmpty();
+        }
+
+        // saved by flush and close
+        try (IndexedBotStorage storage = new IndexedBotStorage(new LogBotStorage(dir))) {
+            assert storage.get("bot1").members == 3;
+            assert storage.get("bot2").members == -1;
+        }
+    }
+
+    private static HashSet<String> ids(IndexedBotStorage storage, Segment segment) {
+        return new HashSet<>(storage.select(segment));
+    }
+
+    private static HashSet<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static BotState newState(String botId, String locale, String origin, long created, int members) {
+        BotState state = new BotState();
+        state.id = botId;
+        state.client = UUID.randomUUID().toString();
+        state.token = "token";
+        state.conversation = "conv";
+        state.locale = locale;
+        state.origin = origin;
+        state.created = created;
+        state.members = members;
+        return state;
+    }
+}
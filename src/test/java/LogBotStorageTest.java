@@ -0,0 +1,161 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.FileBotStorage;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+public class LogBotStorageTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testSaveReopenRemove() throws Exception {
+        String dir = mkTmpDir("storage").getAbsolutePath();
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            storage.save(newState("bot1", "token1"));
+            storage.save(newState("bot2", "token2"));
+            storage.save(newState("bot1", "token3"));
+            assert storage.remove("bot2");
+            assert !storage.remove("bot2");
+        }
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.getBotIds().size() == 1;
+            assert storage.get("bot1").token.equals("token3");
+            assert storage.get("bot2") == null;
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        String dir = mkTmpDir("storage").getAbsolutePath();
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            storage.save(newState("bot1", "token1"));
+        }
+
+        // simulate a crash in the middle of an append
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "bots.log"), true)) {
+            out.write("0badc0de + {\"id\":\"bot2\",\"cli".getBytes());
+        }
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.get("bot1").token.equals("token1");
+            assert storage.get("bot2") == null;
+            storage.save(newState("bot3", "token3"));
+        }
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.getBotIds().size() == 2;
+            assert storage.get("bot3").token.equals("token3");
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        String dir = mkTmpDir("storage").getAbsolutePath();
+        File log = new File(dir, "bots.log");
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            for (int i = 0; i < 5000; i++)
+                storage.save(newState("bot", "token" + i));
+            assert log.length() < 1024 * 200;
+        }
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.getBotIds().size() == 1;
+            assert storage.get("bot").token.equals("token4999");
+        }
+    }
+
+    @Test
+    public void testReopenCompactsGarbage() throws Exception {
+        String dir = mkTmpDir("storage").getAbsolutePath();
+        File log = new File(dir, "bots.log");
+
+        // a log left behind with more superseded records than the compaction threshold
+        try (FileOutputStream out = new FileOutputStream(log)) {
+            for (int i = 0; i < 2000; i++) {
+                String json = mapper.writeValueAsString(newState("bot", "token" + i));
+                CRC32 crc = new CRC32();
+                crc.update(json.getBytes(StandardCharsets.UTF_8));
+                out.write(String.format("%08x + %s\n", crc.getValue(), json).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        long before = log.length();
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert log.length() < before;
+            assert storage.get("bot").token.equals("token1999");
+            storage.save(newState("bot", "token2000"));
+        }
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.getBotIds().size() == 1;
+            assert storage.get("bot").token.equals("token2000");
+        }
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+        String dir = mkTmpDir("storage").getAbsolutePath();
+        new FileBotStorage(dir).save(newState("legacy", "token"));
+
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            BotState state = storage.get("legacy");
+            assert state != null;
+            assert state.token.equals("token");
+            assert state.conversation.equals("conv");
+            assert storage.remove("legacy");
+        }
+
+        // removed bots are not imported again
+        try (LogBotStorage storage = new LogBotStorage(dir)) {
+            assert storage.get("legacy") == null;
+        }
+        assert new FileBotStorage(dir).get("legacy") == null;
+    }
+
+    private static BotState newState(String botId, String token) {
+        BotState state = new BotState();
+        state.id = botId;
+        state.client = UUID.randomUUID().toString();
+        state.token = token;
+        state.conversation = "conv";
+        state.locale = "en";
+        return state;
+    }
+
+    private static File mkTmpDir(String name) throws IOException {
+        File tmpDir = File.createTempFile(name, "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+        return tmpDir;
+    }
+}
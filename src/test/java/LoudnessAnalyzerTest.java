@@ -0,0 +1,110 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.assets.LoudnessAnalyzer;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class LoudnessAnalyzerTest {
+    private static final int FRAMES = 44_100;
+
+    @Test
+    public void testFormats() throws Exception {
+        check(new AudioFormat(44100, 16, 1, true, false));
+        check(new AudioFormat(44100, 16, 2, true, true));
+        check(new AudioFormat(44100, 8, 1, false, false));
+        check(new AudioFormat(44100, 24, 2, true, false));
+        check(new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 1, 4, 44100, true));
+    }
+
+    @Test
+    public void testUnknownLength() throws Exception {
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        byte[] pcm = encode(format, 10 * FRAMES);
+        AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(pcm), format, AudioSystem.NOT_SPECIFIED);
+
+        byte[] levels = LoudnessAnalyzer.analyze(in, 100);
+        assert levels.length >= 50 && levels.length <= 100 : levels.length;
+        assertShape(levels);
+    }
+
+    @Test
+    public void testShortAndSilent() throws Exception {
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+
+        byte[] levels = LoudnessAnalyzer.analyze(stream(format, new byte[20]), 100);
+        assert levels.length == 10;
+        for (byte level : levels)
+            assert level == 0;
+
+        assert LoudnessAnalyzer.analyze(stream(format, new byte[0]), 100).length == 0;
+    }
+
+    private static void check(AudioFormat format) throws Exception {
+        byte[] levels = LoudnessAnalyzer.analyze(stream(format, encode(format, FRAMES)), 100);
+        assert levels.length == 100 : format + " " + levels.length;
+        assertShape(levels);
+    }
+
+    /**
+     * First half silent, second half a full scale square wave
+     */
+    private static void assertShape(byte[] levels) {
+        int half = levels.length / 2;
+        for (int i = 0; i < half - 1; i++)
+            assert levels[i] == 0 : i + ": " + levels[i];
+        for (int i = half + 1; i < levels.length; i++)
+            assert (levels[i] & 0xFF) >= 250 : i + ": " + (levels[i] & 0xFF);
+    }
+
+    private static byte[] encode(AudioFormat format, int frames) {
+        int bytes = format.getSampleSizeInBits() / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(frames * format.getFrameSize())
+                .order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        for (int f = 0; f < frames; f++) {
+            double sample = f < frames / 2 ? 0 : (f % 2 == 0 ? 0.9 : -0.9);
+            for (int c = 0; c < format.getChannels(); c++) {
+                if (format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT)) {
+                    buffer.putFloat((float) sample);
+                    continue;
+                }
+                long max = (1L << (8 * bytes - 1)) - 1;
+                long value = Math.round(sample * max);
+                if (format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED))
+                    value += max + 1;
+                for (int i = 0; i < bytes; i++) {
+                    int shift = format.isBigEndian() ? 8 * (bytes - 1 - i) : 8 * i;
+                    buffer.put((byte) (value >>> shift));
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    private static AudioInputStream stream(AudioFormat format, byte[] pcm) {
+        return new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / format.getFrameSize());
+    }
+}
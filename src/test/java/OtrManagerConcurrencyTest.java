@@ -0,0 +1,133 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+import com.wire.bots.sdk.OtrManager;
+import com.wire.bots.sdk.models.otr.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sender encrypts for many devices from several threads at once. Every encrypt must succeed and every session
+ * must still be intact afterwards. The throughput is measured by OtrConcurrencyBenchmark in the benchmarks profile.
+ */
+public class OtrManagerConcurrencyTest {
+    private final static int DEVICES = 32;
+    private final static int ROUNDS = 20;
+    private final static int THREADS = 4;
+
+    private final static String aliceId = "alice";
+    private final static String aliceClientId = "alice_device";
+
+    private static OtrManager alice;
+    private static OtrManager[] bobs = new OtrManager[DEVICES];
+
+    @Test
+    public void testConcurrentEncrypt() throws Exception {
+        byte[] content = "Hello Bobs, This is Alice!".getBytes();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ArrayList<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t;
+            futures.add(executor.submit(() -> {
+                int count = 0;
+                for (int r = 0; r < ROUNDS; r++) {
+                    // threads start at different devices and overlap on the sessions
+                    for (int i = 0; i < DEVICES; i++) {
+                        int device = (offset * 7 + i) % DEVICES;
+                        Missing devices = new Missing();
+                        devices.add(bobId(device), bobClientId(device));
+                        Recipients encrypt = alice.encrypt(devices, content);
+                        assert encrypt.get(bobId(device), bobClientId(device)) != null;
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+
+        int total = 0;
+        for (Future<Integer> future : futures)
+            total += future.get();
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        assert total == THREADS * DEVICES * ROUNDS;
+
+        // Every session must still be intact after concurrent use
+        for (int i = 0; i < DEVICES; i++) {
+            Missing devices = new Missing();
+            devices.add(bobId(i), bobClientId(i));
+            Recipients encrypt = alice.encrypt(devices, content);
+
+            byte[] decrypt = bobs[i].decrypt(aliceId, aliceClientId, encrypt.get(bobId(i), bobClientId(i)));
+            assert Arrays.equals(decrypt, content);
+        }
+    }
+
+    private static String bobId(int i) {
+        return "bob" + i;
+    }
+
+    private static String bobClientId(int i) {
+        return "bob_device" + i;
+    }
+
+    private static File mkTmpDir(String name) throws IOException {
+        File tmpDir = File.createTempFile(name, "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+        return tmpDir;
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        alice = new OtrManager(mkTmpDir("cryptobox-alice").getAbsolutePath());
+
+        PreKeys preKeys = new PreKeys();
+        for (int i = 0; i < DEVICES; i++) {
+            bobs[i] = new OtrManager(mkTmpDir("cryptobox-bob" + i).getAbsolutePath());
+
+            HashMap<String, PreKey> devs = new HashMap<>();
+            devs.put(bobClientId(i), bobs[i].newPreKeys(0, 1).get(0));
+            preKeys.put(bobId(i), devs);
+        }
+
+        // Create sessions with all the devices
+        Recipients encrypt = alice.encrypt(preKeys, new byte[16]);
+        assert encrypt.size() == DEVICES;
+    }
+
+    @AfterClass
+    public static void clean() {
+        alice.close();
+        for (OtrManager bob : bobs)
+            bob.close();
+    }
+}
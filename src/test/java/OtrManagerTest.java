@@ -16,6 +16,7 @@
 // along with this program. If not, see http://www.gnu.org/licenses/.
 //
 
+import com.wire.bots.sdk.Configuration;
 import com.wire.bots.sdk.OtrManager;
 import com.wire.bots.sdk.models.otr.*;
 import org.junit.AfterClass;
@@ -27,6 +28,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 public class OtrManagerTest {
 
@@ -103,6 +105,57 @@ public class OtrManagerTest {
         assert text.equals(text2);
     }
 
+    @Test
+    public void testParallelEncrypt() throws Exception {
+        final int devices = 10;
+        byte[] content = "Hello devices, This is Carol and Dave!".getBytes();
+
+        Configuration.Sessions parallel = new Configuration.Sessions();
+        parallel.parallelThreshold = 2;
+        parallel.parallelism = 3;
+        Configuration.Sessions sequential = new Configuration.Sessions();
+        sequential.parallelThreshold = 0;
+
+        OtrManager carol = new OtrManager(mkTmpDir("cryptobox-carol").getAbsolutePath(), parallel);
+        OtrManager dave = new OtrManager(mkTmpDir("cryptobox-dave").getAbsolutePath(), sequential);
+        OtrManager[] receivers = new OtrManager[devices];
+        try {
+            PreKeys carolKeys = new PreKeys();
+            PreKeys daveKeys = new PreKeys();
+            Missing missing = new Missing();
+            for (int i = 0; i < devices; i++) {
+                receivers[i] = new OtrManager(mkTmpDir("cryptobox-device" + i).getAbsolutePath());
+                ArrayList<PreKey> keys = receivers[i].newPreKeys(0, 2);
+                carolKeys.putAll(getPreKeys(keys.subList(0, 1), "device" + i, "user" + i));
+                daveKeys.putAll(getPreKeys(keys.subList(1, 2), "device" + i, "user" + i));
+                missing.add("user" + i, "device" + i);
+            }
+
+            // from the prekeys first, then from the sessions
+            assertSame(carol.encrypt(carolKeys, content), dave.encrypt(daveKeys, content), receivers, content);
+            assertSame(carol.encrypt(missing, content), dave.encrypt(missing, content), receivers, content);
+        } finally {
+            carol.close();
+            dave.close();
+            for (OtrManager receiver : receivers) {
+                if (receiver != null)
+                    receiver.close();
+            }
+        }
+    }
+
+    private static void assertSame(Recipients parallel, Recipients sequential, OtrManager[] receivers, byte[] content)
+            throws Exception {
+        assert parallel.size() == receivers.length;
+        assert sequential.size() == receivers.length;
+        for (int i = 0; i < receivers.length; i++) {
+            byte[] fromCarol = receivers[i].decrypt("carol", "carol_device", parallel.get("user" + i, "device" + i));
+            byte[] fromDave = receivers[i].decrypt("dave", "dave_device", sequential.get("user" + i, "device" + i));
+            assert Arrays.equals(fromCarol, content);
+            assert Arrays.equals(fromDave, content);
+        }
+    }
+
     private static File mkTmpDir(String name) throws IOException {
         File tmpDir = File.createTempFile(name, "");
         tmpDir.delete();
@@ -125,7 +178,7 @@ public class OtrManagerTest {
         aliceKeys = getPreKeys(preKeys, aliceClientId, aliceId);
     }
 
-    private static PreKeys getPreKeys(ArrayList<PreKey> array, String clientId, String userId) {
+    private static PreKeys getPreKeys(List<PreKey> array, String clientId, String userId) {
         HashMap<String, PreKey> devs = new HashMap<>();
         for (PreKey key : array) {
             devs.put(clientId, key);
@@ -0,0 +1,82 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.OtrManager;
+import com.wire.bots.sdk.PreKeyPool;
+import com.wire.bots.sdk.models.otr.PreKey;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+public class PreKeyPoolTest {
+
+    @Test
+    public void testBindBox() throws Exception {
+        File cryptoDir = Files.createTempDirectory("crypto").toFile();
+        Configuration.PreKeys conf = new Configuration.PreKeys();
+        conf.poolSize = 2;
+        conf.refillBelow = 2;
+        conf.batchSize = 10;
+
+        // worker runs on the calling thread
+        PreKeyPool pool = new PreKeyPool(cryptoDir.getAbsolutePath(), conf, Runnable::run);
+        pool.start();
+        assert pool.getDepth() == 2;
+
+        File botDir = new File(cryptoDir, "bot");
+        PreKeyPool.Batch batch = pool.take(botDir);
+        assert batch != null;
+        assert batch.lastPreKey != null;
+        assert batch.preKeys.size() == 10;
+        assert botDir.isDirectory();
+        assert !new File(botDir, "prekeys.json").exists();
+
+        // refilled after dropping below the threshold
+        assert pool.getDepth() == 2;
+
+        // the box bound to the bot keeps generating prekeys after the pooled ones
+        OtrManager otr = new OtrManager(botDir.getAbsolutePath());
+        ArrayList<PreKey> more = otr.newPreKeys(10, 5);
+        assert more.size() == 5;
+        otr.close();
+
+        // restart picks up the boxes that are ready
+        PreKeyPool restarted = new PreKeyPool(cryptoDir.getAbsolutePath(), conf, command -> {
+        });
+        restarted.start();
+        assert restarted.getDepth() == 2;
+    }
+
+    @Test
+    public void testEmptyPool() throws Exception {
+        File cryptoDir = Files.createTempDirectory("crypto").toFile();
+        Configuration.PreKeys conf = new Configuration.PreKeys();
+        conf.poolSize = 1;
+
+        // worker never runs
+        PreKeyPool pool = new PreKeyPool(cryptoDir.getAbsolutePath(), conf, command -> {
+        });
+        pool.start();
+        assert pool.take(new File(cryptoDir, "bot")) == null;
+    }
+}
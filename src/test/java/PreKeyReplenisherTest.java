@@ -0,0 +1,156 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.wire.bots.sdk.ClientRepo;
+import com.wire.bots.sdk.Configuration;
+import com.wire.bots.sdk.PreKeyReplenisher;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.models.otr.PreKey;
+import com.wire.bots.sdk.storage.BotState;
+import com.wire.bots.sdk.storage.LogBotStorage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.function.BooleanSupplier;
+
+public class PreKeyReplenisherTest {
+    private static final long DELAY = 100;
+
+    @Test
+    public void testJoinsAreBatched() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.available.add(0xFFFF);   // only the last prekey is left
+        PreKeyReplenisher replenisher = new PreKeyReplenisher(newRepo(backend), DELAY);
+
+        replenisher.onMemberJoin("bot1", 1);
+        replenisher.onMemberJoin("bot1", 2);
+        replenisher.onMemberJoin("bot1", 1);
+        waitFor(() -> backend.uploads == 1);
+        Thread.sleep(3 * DELAY);
+
+        assert backend.queries == 1;
+        assert backend.uploads == 1;
+        assert backend.from == 0;
+        assert backend.uploaded == 4 * 8;
+    }
+
+    @Test
+    public void testFailureResetsEstimate() throws Exception {
+        FakeBackend backend = new FakeBackend();
+        backend.fail = true;
+        PreKeyReplenisher replenisher = new PreKeyReplenisher(newRepo(backend), DELAY);
+
+        // upload fails: the estimate is unknown again
+        replenisher.onMemberJoin("bot1", 1);
+        waitFor(() -> backend.uploads == 1);
+        assert backend.queries == 1;
+        assert backend.uploaded == 0;
+
+        // asks the Backend again, enough left for this join and the next one
+        backend.fail = false;
+        for (int i = 1; i <= 20; i++)
+            backend.available.add(i);
+        replenisher.onMemberJoin("bot1", 1);
+        waitFor(() -> backend.queries == 2);
+
+        // covered by the estimate
+        Thread.sleep(3 * DELAY);
+        replenisher.onMemberJoin("bot1", 1);
+        Thread.sleep(3 * DELAY);
+        assert backend.queries == 2;
+        assert backend.uploads == 1;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++)
+            Thread.sleep(DELAY / 2);
+        assert condition.getAsBoolean();
+    }
+
+    private static ClientRepo newRepo(FakeBackend backend) throws Exception {
+        String dir = Files.createTempDirectory("repo").toString();
+        LogBotStorage storage = new LogBotStorage(dir);
+        BotState state = new BotState();
+        state.id = "bot1";
+        state.client = "client";
+        state.token = "token";
+        state.conversation = "conv";
+        storage.save(state);
+
+        return new ClientRepo((botId, convId, clientId, token) -> backend.newClient(botId),
+                dir, Runnable::run, new Configuration.Clients(), storage);
+    }
+
+    private static class FakeBackend {
+        final ArrayList<Integer> available = new ArrayList<>();
+        volatile boolean fail;
+        volatile int queries;
+        volatile int uploads;
+        volatile int uploaded;
+        volatile int from = -1;
+
+        WireClient newClient(String botId) {
+            return (WireClient) Proxy.newProxyInstance(WireClient.class.getClassLoader(),
+                    new Class[]{WireClient.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getId":
+                                return botId;
+                            case "isClosed":
+                                return false;
+                            case "close":
+                                return null;
+                            case "getAvailablePrekeys":
+                                queries++;
+                                return new ArrayList<>(available);
+                            case "newPreKeys":
+                                return newPreKeys((int) args[0], (int) args[1]);
+                            case "uploadPreKeys":
+                                uploads++;
+                                if (fail)
+                                    throw new IOException("uploadPreKeys failed");
+                                uploaded += ((ArrayList<?>) args[0]).size();
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return botId;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        private ArrayList<PreKey> newPreKeys(int from, int count) {
+            this.from = from;
+            ArrayList<PreKey> ret = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                PreKey key = new PreKey();
+                key.id = from + i;
+                ret.add(key);
+            }
+            return ret;
+        }
+    }
+}
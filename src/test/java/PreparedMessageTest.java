@@ -0,0 +1,46 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+
+import com.wire.bots.sdk.assets.PreparedMessage;
+import com.wire.bots.sdk.assets.Text;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class PreparedMessageTest {
+
+    @Test
+    public void testPayloadIsShared() throws Exception {
+        PreparedMessage prepared = new PreparedMessage(new Text("Hello"));
+
+        // built and serialized once
+        assert PreparedMessage.payload(prepared) == PreparedMessage.payload(prepared);
+        assert prepared.createGenericMsg() == prepared.createGenericMsg();
+
+        // other messages are serialized on every send
+        Text text = new Text("Hello");
+        assert Arrays.equals(PreparedMessage.payload(text), text.createGenericMsg().toByteArray());
+
+        PreparedMessage copy = new PreparedMessage(PreparedMessage.payload(prepared));
+        assert copy.getMessageId().equals(prepared.getMessageId());
+        assert copy.createGenericMsg().getText().getContent().equals("Hello");
+        assert Arrays.equals(PreparedMessage.payload(copy), PreparedMessage.payload(prepared));
+    }
+}
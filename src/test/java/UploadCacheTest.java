@@ -0,0 +1,145 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+import com.wire.bots.sdk.AssetCache;
+import com.wire.bots.sdk.AsyncWireClientBase;
+import com.wire.bots.sdk.UploadCache;
+import com.wire.bots.sdk.WireClient;
+import com.wire.bots.sdk.assets.FileAsset;
+import com.wire.bots.sdk.assets.IAsset;
+import com.wire.bots.sdk.assets.IGeneric;
+import com.wire.bots.sdk.assets.Picture;
+import com.wire.bots.sdk.models.AssetKey;
+import com.wire.bots.sdk.server.model.Conversation;
+import com.wire.bots.sdk.server.model.User;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UploadCacheTest {
+
+    @Test
+    public void testAsyncPictureIsUploadedOnce() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FakeClient client = new FakeClient(executor, new UploadCache(16, 3600));
+            client.sendPicture(png.toByteArray(), "image/png").get(10, TimeUnit.SECONDS);
+            client.sendPicture(png.toByteArray(), "image/png").get(10, TimeUnit.SECONDS);
+            assert client.uploads.get() == 1;
+
+            Picture first = (Picture) client.sent.get(0);
+            Picture second = (Picture) client.sent.get(1);
+            assert second.getAssetKey().equals(first.getAssetKey());
+            assert Arrays.equals(second.getOtrKey(), first.getOtrKey());
+            assert Arrays.equals(second.getSha256(), first.getSha256());
+
+            // the cache is keyed by the mime type as well
+            client.sendPicture(png.toByteArray(), "image/x-png").get(10, TimeUnit.SECONDS);
+            assert client.uploads.get() == 2;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncFileIsUploadedOnce() throws Exception {
+        File file = Files.createTempFile("upload", ".txt").toFile();
+        Files.write(file.toPath(), "Hello Wire".getBytes());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FakeClient client = new FakeClient(executor, new UploadCache(16, 3600));
+            client.sendFile(file, "text/plain").get(10, TimeUnit.SECONDS);
+            client.sendFile(file, "text/plain").get(10, TimeUnit.SECONDS);
+            assert client.uploads.get() == 1;
+
+            // preview + asset for each file
+            assert client.sent.size() == 4;
+            FileAsset first = (FileAsset) client.sent.get(1);
+            FileAsset second = (FileAsset) client.sent.get(3);
+            assert Arrays.equals(second.getOtrKey(), first.getOtrKey());
+            assert Arrays.equals(second.getSha256(), first.getSha256());
+
+            FakeClient uncached = new FakeClient(executor, UploadCache.disabled());
+            uncached.sendFile(file, "text/plain").get(10, TimeUnit.SECONDS);
+            uncached.sendFile(file, "text/plain").get(10, TimeUnit.SECONDS);
+            assert uncached.uploads.get() == 2;
+        } finally {
+            executor.shutdownNow();
+            file.delete();
+        }
+    }
+
+    private static class FakeClient extends AsyncWireClientBase {
+        final AtomicInteger uploads = new AtomicInteger();
+        final ArrayList<IGeneric> sent = new ArrayList<>();
+
+        FakeClient(ExecutorService executor, UploadCache uploads) {
+            super(executor, AssetCache.disabled(), uploads);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> send(IGeneric generic) {
+            sent.add(generic);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<AssetKey> uploadAsset(IAsset asset) {
+            AssetKey assetKey = new AssetKey();
+            assetKey.key = "3-1-" + uploads.incrementAndGet();
+            return CompletableFuture.completedFuture(assetKey);
+        }
+
+        @Override
+        protected CompletableFuture<byte[]> downloadCipher(String assetKey, String assetToken) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Collection<User>> getUsers(Collection<String> userIds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Conversation> getConversation() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WireClient getWireClient() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
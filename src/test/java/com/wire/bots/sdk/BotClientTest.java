@@ -0,0 +1,97 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk;
+
+import com.wire.bots.sdk.assets.PreparedMessage;
+import com.wire.bots.sdk.assets.Text;
+import com.wire.bots.sdk.models.otr.Missing;
+import com.wire.bots.sdk.models.otr.Recipients;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+
+public class BotClientTest {
+
+    @Test
+    public void testPreparedPayloadIsShared() throws Exception {
+        PreparedMessage prepared = new PreparedMessage(new Text("Hello"));
+        byte[] payload = PreparedMessage.payload(prepared);
+
+        File dir = Files.createTempDirectory("cryptobox").toFile();
+        try (CapturingOtrManager otrManager = new CapturingOtrManager(dir.getAbsolutePath())) {
+            BotClient first = client(otrManager, "bot1");
+            BotClient second = client(otrManager, "bot2");
+
+            send(first, prepared);
+            assert otrManager.content == payload;
+
+            otrManager.content = null;
+            send(second, prepared);
+            assert otrManager.content == payload;
+
+            otrManager.content = null;
+            try {
+                second.postGenericMessageAsync(prepared, Runnable::run).get();
+                assert false;
+            } catch (ExecutionException e) {
+                assert e.getCause() instanceof Sent;
+            }
+            assert otrManager.content == payload;
+        }
+    }
+
+    private static BotClient client(OtrManager otrManager, String botId) throws Exception {
+        BotClient client = new BotClient(otrManager, botId, "conv", "client", "token");
+
+        // known devices, so nothing is fetched from the Backend before encrypting
+        Field devices = BotClient.class.getDeclaredField("devices");
+        devices.setAccessible(true);
+        devices.set(client, new Missing());
+        return client;
+    }
+
+    private static void send(BotClient client, PreparedMessage prepared) throws Exception {
+        try {
+            client.send(prepared);
+            assert false;
+        } catch (Sent ignore) {
+        }
+    }
+
+    private static class CapturingOtrManager extends OtrManager {
+        volatile byte[] content;
+
+        CapturingOtrManager(String cryptoDir) throws Exception {
+            super(cryptoDir);
+        }
+
+        @Override
+        public Recipients encrypt(Missing missing, byte[] content) {
+            this.content = content;
+            throw new Sent();   // stops before the message is posted
+        }
+    }
+
+    private static class Sent extends RuntimeException {
+    }
+}
@@ -0,0 +1,103 @@
+//
+// Wire
+// Copyright (C) 2016 Wire Swiss GmbH
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see http://www.gnu.org/licenses/.
+//
+
+
+package com.wire.bots.sdk.broadcast;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BroadcastJobTest {
+    private static final List<String> TARGETS = Arrays.asList("bot0", "bot1", "bot2", "bot3", "bot4");
+
+    @Test
+    public void testCheckpointAndResume() throws Exception {
+        Path dir = Files.createTempDirectory("broadcasts").resolve("job");
+
+        BroadcastJob job = BroadcastJob.create(dir, "Hello", TARGETS);
+        assert job.getTotal() == 5;
+        assert Files.readAllLines(dir.resolve(BroadcastJob.TARGETS), StandardCharsets.UTF_8).equals(TARGETS);
+
+        // completed out of order: the watermark stops at the first gap
+        job.succeeded(0);
+        job.succeeded(2);
+        job.failed(3, "bot3", "error");
+        assert job.isDone(0) && !job.isDone(1) && job.isDone(2) && job.isDone(3) && !job.isDone(4);
+        job.checkpoint();
+
+        // completed after the checkpoint: lost on a crash
+        job.succeeded(1);
+
+        BroadcastJob resumed = BroadcastJob.load(dir);
+        assert !resumed.isFinished();
+        assert resumed.getState() == BroadcastJob.State.RUNNING;
+        assert resumed.getMessageId().equals(job.getMessageId());
+        assert resumed.getSent() == 2;
+        assert resumed.getFailed() == 1;
+        assert resumed.isDone(0) && !resumed.isDone(1) && resumed.isDone(2) && resumed.isDone(3);
+        assert !resumed.isDone(4);
+
+        // the rest of the targets on resume
+        resumed.succeeded(1);
+        resumed.succeeded(4);
+        resumed.finish(BroadcastJob.State.DONE);
+        assert resumed.await(0, TimeUnit.SECONDS);
+
+        BroadcastJob done = BroadcastJob.load(dir);
+        assert done.isFinished();
+        assert done.getState() == BroadcastJob.State.DONE;
+        assert done.getSent() == 4;
+        assert done.getFailed() == 1;
+        for (int i = 0; i < TARGETS.size(); i++)
+            assert done.isDone(i);
+
+        List<String> failed = Files.readAllLines(dir.resolve(BroadcastJob.FAILED), StandardCharsets.UTF_8);
+        assert failed.equals(Arrays.asList("bot3 error"));
+    }
+
+    @Test
+    public void testSuspendAndCancel() throws Exception {
+        Path dir = Files.createTempDirectory("broadcasts").resolve("job");
+
+        BroadcastJob job = BroadcastJob.create(dir, "Hello", TARGETS);
+        job.failed(0, "bot0", "first");
+        job.suspend();
+
+        // failures of the resumed job are appended
+        BroadcastJob resumed = BroadcastJob.load(dir);
+        resumed.failed(1, "bot1", "second");
+        resumed.cancel();
+        assert resumed.getState() == BroadcastJob.State.CANCELLED;
+        resumed.finish(BroadcastJob.State.CANCELLED);
+
+        BroadcastJob cancelled = BroadcastJob.load(dir);
+        assert cancelled.isFinished();
+        assert cancelled.getState() == BroadcastJob.State.CANCELLED;
+        assert cancelled.getFailed() == 2;
+        assert !cancelled.isDone(2);
+
+        List<String> failed = Files.readAllLines(dir.resolve(BroadcastJob.FAILED), StandardCharsets.UTF_8);
+        assert failed.equals(Arrays.asList("bot0 first", "bot1 second"));
+    }
+}